@@ -24,9 +24,17 @@ import android.util.Log;
 import java.io.FileDescriptor;
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.HashSet;
 import com.actionbarsherlock.R;
 
 final class BackStackState implements Parcelable {
+    // Number of fixed ints that start each op in mOps.
+    static final int OP_FIXED_FIELDS = 6;
+
+    // Marker used by the compact format for a styled bread crumb title
+    // that can not be placed in the string table.
+    static final int TEXT_INLINE = -2;
+
     final int[] mOps;
     final int mTransition;
     final int mTransitionStyle;
@@ -36,6 +44,7 @@ final class BackStackState implements Parcelable {
     final CharSequence mBreadCrumbTitleText;
     final int mBreadCrumbShortTitleRes;
     final CharSequence mBreadCrumbShortTitleText;
+    final boolean mAllowCompaction;
 
     public BackStackState(FragmentManagerImpl fm, BackStackRecord bse) {
         int numRemoved = 0;
@@ -54,7 +63,7 @@ final class BackStackState implements Parcelable {
         int pos = 0;
         while (op != null) {
             mOps[pos++] = op.cmd;
-            mOps[pos++] = op.fragment.mIndex;
+            mOps[pos++] = op.getFragmentIndex();
             mOps[pos++] = op.enterAnim;
             mOps[pos++] = op.exitAnim;
             mOps[pos++] = op.popEnterAnim;
@@ -63,7 +72,7 @@ final class BackStackState implements Parcelable {
                 final int N = op.removed.size();
                 mOps[pos++] = N;
                 for (int i=0; i<N; i++) {
-                    mOps[pos++] = op.removed.get(i).mIndex;
+                    mOps[pos++] = op.getRemovedIndex(i);
                 }
             } else {
                 mOps[pos++] = 0;
@@ -78,6 +87,7 @@ final class BackStackState implements Parcelable {
         mBreadCrumbTitleText = bse.mBreadCrumbTitleText;
         mBreadCrumbShortTitleRes = bse.mBreadCrumbShortTitleRes;
         mBreadCrumbShortTitleText = bse.mBreadCrumbShortTitleText;
+        mAllowCompaction = bse.mAllowCompaction;
     }
 
     public BackStackState(Parcel in) {
@@ -90,6 +100,21 @@ final class BackStackState implements Parcelable {
         mBreadCrumbTitleText = TextUtils.CHAR_SEQUENCE_CREATOR.createFromParcel(in);
         mBreadCrumbShortTitleRes = in.readInt();
         mBreadCrumbShortTitleText = TextUtils.CHAR_SEQUENCE_CREATOR.createFromParcel(in);
+        mAllowCompaction = in.readInt() != 0;
+    }
+
+    public BackStackState(Parcel in, String[] strings) {
+        final int numOps = in.readInt();
+        mOps = decodeOps(in.createByteArray(), numOps);
+        mTransition = in.readInt();
+        mTransitionStyle = in.readInt();
+        mName = FragmentManagerState.StringPool.lookup(strings, in.readInt());
+        mIndex = in.readInt();
+        mBreadCrumbTitleRes = in.readInt();
+        mBreadCrumbTitleText = readCompactText(in, strings);
+        mBreadCrumbShortTitleRes = in.readInt();
+        mBreadCrumbShortTitleText = readCompactText(in, strings);
+        mAllowCompaction = in.readInt() != 0;
     }
 
     public BackStackRecord instantiate(FragmentManagerImpl fm) {
@@ -127,6 +152,7 @@ final class BackStackState implements Parcelable {
         bse.mBreadCrumbTitleText = mBreadCrumbTitleText;
         bse.mBreadCrumbShortTitleRes = mBreadCrumbShortTitleRes;
         bse.mBreadCrumbShortTitleText = mBreadCrumbShortTitleText;
+        bse.mAllowCompaction = mAllowCompaction;
         bse.bumpBackStackNesting(1);
         return bse;
     }
@@ -145,6 +171,127 @@ final class BackStackState implements Parcelable {
         TextUtils.writeToParcel(mBreadCrumbTitleText, dest, 0);
         dest.writeInt(mBreadCrumbShortTitleRes);
         TextUtils.writeToParcel(mBreadCrumbShortTitleText, dest, 0);
+        dest.writeInt(mAllowCompaction ? 1 : 0);
+    }
+
+    void internStrings(FragmentManagerState.StringPool pool) {
+        pool.intern(mName);
+        if (mBreadCrumbTitleText instanceof String) {
+            pool.intern((String)mBreadCrumbTitleText);
+        }
+        if (mBreadCrumbShortTitleText instanceof String) {
+            pool.intern((String)mBreadCrumbShortTitleText);
+        }
+    }
+
+    void writeCompactToParcel(Parcel dest, FragmentManagerState.StringPool pool) {
+        dest.writeInt(mOps.length);
+        dest.writeByteArray(encodeOps(mOps));
+        dest.writeInt(mTransition);
+        dest.writeInt(mTransitionStyle);
+        dest.writeInt(pool.intern(mName));
+        dest.writeInt(mIndex);
+        dest.writeInt(mBreadCrumbTitleRes);
+        writeCompactText(dest, pool, mBreadCrumbTitleText);
+        dest.writeInt(mBreadCrumbShortTitleRes);
+        writeCompactText(dest, pool, mBreadCrumbShortTitleText);
+        dest.writeInt(mAllowCompaction ? 1 : 0);
+    }
+
+    static void writeCompactText(Parcel dest, FragmentManagerState.StringPool pool,
+            CharSequence text) {
+        if (text == null || text instanceof String) {
+            dest.writeInt(pool.intern((String)text));
+        } else {
+            dest.writeInt(TEXT_INLINE);
+            TextUtils.writeToParcel(text, dest, 0);
+        }
+    }
+
+    static CharSequence readCompactText(Parcel in, String[] strings) {
+        final int index = in.readInt();
+        if (index == TEXT_INLINE) {
+            return TextUtils.CHAR_SEQUENCE_CREATOR.createFromParcel(in);
+        }
+        return FragmentManagerState.StringPool.lookup(strings, index);
+    }
+
+    /**
+     * Encode an op array as variable-length integers.  Each fixed field is
+     * stored as the difference from the same field of the previous op, and
+     * each removed fragment index as the difference from the index of the
+     * op's own fragment, so the typical long run of similar ops collapses
+     * to a byte or two per field.
+     */
+    static byte[] encodeOps(int[] ops) {
+        byte[] buf = new byte[ops.length*5];
+        int[] last = new int[OP_FIXED_FIELDS];
+        int pos = 0;
+        int i = 0;
+        while (i < ops.length) {
+            final int fragmentIndex = ops[i+1];
+            for (int f=0; f<OP_FIXED_FIELDS; f++) {
+                pos = writeVarInt(buf, pos, zigZag(ops[i] - last[f]));
+                last[f] = ops[i++];
+            }
+            final int N = ops[i++];
+            pos = writeVarInt(buf, pos, N);
+            for (int j=0; j<N; j++) {
+                pos = writeVarInt(buf, pos, zigZag(ops[i++] - fragmentIndex));
+            }
+        }
+        byte[] result = new byte[pos];
+        System.arraycopy(buf, 0, result, 0, pos);
+        return result;
+    }
+
+    static int[] decodeOps(byte[] buf, int length) {
+        int[] ops = new int[length];
+        int[] last = new int[OP_FIXED_FIELDS];
+        int[] pos = new int[1];
+        int i = 0;
+        while (i < length) {
+            for (int f=0; f<OP_FIXED_FIELDS; f++) {
+                last[f] += unZigZag(readVarInt(buf, pos));
+                ops[i++] = last[f];
+            }
+            final int fragmentIndex = last[1];
+            final int N = readVarInt(buf, pos);
+            ops[i++] = N;
+            for (int j=0; j<N; j++) {
+                ops[i++] = fragmentIndex + unZigZag(readVarInt(buf, pos));
+            }
+        }
+        return ops;
+    }
+
+    private static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static int writeVarInt(byte[] buf, int pos, int value) {
+        while ((value & ~0x7f) != 0) {
+            buf[pos++] = (byte)((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        buf[pos++] = (byte)value;
+        return pos;
+    }
+
+    private static int readVarInt(byte[] buf, int[] pos) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buf[pos[0]++];
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
     }
 
     public static final Parcelable.Creator<BackStackState> CREATOR
@@ -189,6 +336,21 @@ final class BackStackRecord extends FragmentTransaction implements
         int popEnterAnim;
         int popExitAnim;
         ArrayList<Fragment> removed;
+
+        // Set when this op belongs to a back stack entry that has been
+        // compacted.  A fragment reference that was released by the
+        // compaction is null, and is found again through these indices.
+        int fragmentIndex = -1;
+        int[] removedIndices;
+
+        int getFragmentIndex() {
+            return fragment != null ? fragment.mIndex : fragmentIndex;
+        }
+
+        int getRemovedIndex(int i) {
+            Fragment r = removed.get(i);
+            return r != null ? r.mIndex : removedIndices[i];
+        }
     }
 
     Op mHead;
@@ -202,6 +364,7 @@ final class BackStackRecord extends FragmentTransaction implements
     int mTransitionStyle;
     boolean mAddToBackStack;
     boolean mAllowAddToBackStack = true;
+    boolean mAllowCompaction;
     String mName;
     boolean mCommitted;
     int mIndex;
@@ -483,6 +646,11 @@ final class BackStackRecord extends FragmentTransaction implements
         return this;
     }
 
+    public FragmentTransaction allowBackStackCompaction() {
+        mAllowCompaction = true;
+        return this;
+    }
+
     public FragmentTransaction setBreadCrumbTitle(int res) {
         mBreadCrumbTitleRes = res;
         mBreadCrumbTitleText = null;
@@ -530,6 +698,92 @@ final class BackStackRecord extends FragmentTransaction implements
         }
     }
 
+    /**
+     * Record the active index of every fragment this entry refers to, then
+     * drop the references to fragments that the manager has released.
+     * Called by {@link FragmentManagerImpl#compactBackStack()} before and
+     * after it releases fragments.
+     */
+    void recordFragmentIndices() {
+        Op op = mHead;
+        while (op != null) {
+            if (op.fragment != null) {
+                op.fragmentIndex = op.fragment.mIndex;
+            }
+            if (op.removed != null) {
+                final int N = op.removed.size();
+                if (op.removedIndices == null) {
+                    op.removedIndices = new int[N];
+                }
+                for (int i=0; i<N; i++) {
+                    Fragment r = op.removed.get(i);
+                    if (r != null) {
+                        op.removedIndices[i] = r.mIndex;
+                    }
+                }
+            }
+            op = op.next;
+        }
+    }
+
+    void releaseCompactedFragments() {
+        Op op = mHead;
+        while (op != null) {
+            if (op.fragment != null && op.fragment.mIndex < 0) {
+                op.fragment = null;
+            }
+            if (op.removed != null) {
+                for (int i=op.removed.size()-1; i>=0; i--) {
+                    Fragment r = op.removed.get(i);
+                    if (r != null && r.mIndex < 0) {
+                        op.removed.set(i, null);
+                    }
+                }
+            }
+            op = op.next;
+        }
+    }
+
+    void collectFragments(HashSet<Fragment> fragments) {
+        Op op = mHead;
+        while (op != null) {
+            if (op.fragment != null) {
+                fragments.add(op.fragment);
+            }
+            if (op.removed != null) {
+                for (int i=op.removed.size()-1; i>=0; i--) {
+                    Fragment r = op.removed.get(i);
+                    if (r != null) {
+                        fragments.add(r);
+                    }
+                }
+            }
+            op = op.next;
+        }
+    }
+
+    /**
+     * Re-instantiate any fragments released by back stack compaction, so
+     * that this entry can be popped.
+     */
+    void restoreCompactedFragments() {
+        Op op = mHead;
+        while (op != null) {
+            if (op.fragment == null) {
+                op.fragment = mManager.restoreCompactedFragment(op.fragmentIndex);
+            }
+            if (op.removed != null) {
+                for (int i=op.removed.size()-1; i>=0; i--) {
+                    if (op.removed.get(i) == null) {
+                        op.removed.set(i,
+                                mManager.restoreCompactedFragment(op.removedIndices[i]));
+                    }
+                }
+            }
+            op = op.next;
+        }
+    }
+
     public int commit() {
         return commitInternal(false);
     }
@@ -548,9 +802,24 @@ final class BackStackRecord extends FragmentTransaction implements
             mIndex = -1;
         }
         mManager.enqueueAction(this, allowStateLoss);
+        schedulePreInflation();
         return mIndex;
     }
 
+    void schedulePreInflation() {
+        Op op = mHead;
+        while (op != null) {
+            switch (op.cmd) {
+                case OP_ADD:
+                case OP_REPLACE:
+                case OP_ATTACH:
+                    mManager.preInflateView(op.fragment);
+                    break;
+            }
+            op = op.next;
+        }
+    }
+
     public void run() {
         if (FragmentManagerImpl.DEBUG) Log.v(TAG, "Run: " + this);
 
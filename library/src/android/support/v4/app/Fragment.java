@@ -25,6 +25,7 @@ import android.content.res.Resources;
 import android.os.Bundle;
 import android.os.Parcel;
 import android.os.Parcelable;
+import android.support.v4.content.ModernAsyncTask;
 import android.support.v4.util.DebugUtils;
 import android.support.v4.view.Menu;
 import android.support.v4.view.MenuItem;
@@ -43,6 +44,11 @@ import java.io.PrintWriter;
 import java.util.HashMap;
 
 final class FragmentState implements Parcelable {
+    // Flags packed into a single int by the compact saved state format.
+    static final int FLAG_FROM_LAYOUT = 1<<0;
+    static final int FLAG_RETAIN_INSTANCE = 1<<1;
+    static final int FLAG_DETACHED = 1<<2;
+
     final String mClassName;
     final int mIndex;
     final boolean mFromLayout;
@@ -55,6 +61,9 @@ final class FragmentState implements Parcelable {
 
     Bundle mSavedFragmentState;
 
+    // Only used while the fragment is compacted out of the back stack.
+    int mBackStackNesting;
+
     Fragment mInstance;
 
     public FragmentState(Fragment frag) {
@@ -82,6 +91,20 @@ final class FragmentState implements Parcelable {
         mSavedFragmentState = in.readBundle();
     }
 
+    public FragmentState(Parcel in, int index, String[] strings) {
+        mClassName = FragmentManagerState.StringPool.lookup(strings, in.readInt());
+        mIndex = index;
+        final int flags = in.readInt();
+        mFromLayout = (flags&FLAG_FROM_LAYOUT) != 0;
+        mFragmentId = in.readInt();
+        mContainerId = in.readInt();
+        mTag = FragmentManagerState.StringPool.lookup(strings, in.readInt());
+        mRetainInstance = (flags&FLAG_RETAIN_INSTANCE) != 0;
+        mDetached = (flags&FLAG_DETACHED) != 0;
+        mArguments = in.readBundle();
+        mSavedFragmentState = in.readBundle();
+    }
+
     public Fragment instantiate(SupportActivity activity) {
         if (mInstance != null) {
             return mInstance;
@@ -127,6 +150,23 @@ final class FragmentState implements Parcelable {
         dest.writeBundle(mSavedFragmentState);
     }
 
+    void internStrings(FragmentManagerState.StringPool pool) {
+        pool.intern(mClassName);
+        pool.intern(mTag);
+    }
+
+    void writeCompactToParcel(Parcel dest, FragmentManagerState.StringPool pool) {
+        dest.writeInt(pool.intern(mClassName));
+        dest.writeInt((mFromLayout ? FLAG_FROM_LAYOUT : 0)
+                | (mRetainInstance ? FLAG_RETAIN_INSTANCE : 0)
+                | (mDetached ? FLAG_DETACHED : 0));
+        dest.writeInt(mFragmentId);
+        dest.writeInt(mContainerId);
+        dest.writeInt(pool.intern(mTag));
+        dest.writeBundle(mArguments);
+        dest.writeBundle(mSavedFragmentState);
+    }
+
     public static final Parcelable.Creator<FragmentState> CREATOR
             = new Parcelable.Creator<FragmentState>() {
         public FragmentState createFromParcel(Parcel in) {
@@ -239,6 +279,17 @@ public class Fragment implements ComponentCallbacks, OnCreateContextMenuListener
     // Set to true when the app has requested that this fragment be deactivated.
     boolean mDetached;
 
+    // Set when the view of this hidden fragment has been released to save
+    // memory.  The fragment is held in the created state until it is shown.
+    boolean mViewReleased;
+
+    // Uptime at which this fragment was last hidden.
+    long mHiddenTime;
+
+    // Layout that may be inflated ahead of time, and its pending inflation.
+    int mPreInflateLayoutId;
+    FragmentManagerImpl.PreInflation mPreInflation;
+
     // If set this fragment would like its instance retained across
     // configuration changes.
     boolean mRetainInstance;
@@ -707,6 +758,41 @@ public class Fragment implements ComponentCallbacks, OnCreateContextMenuListener
         return mRetainInstance;
     }
 
+    /**
+     * Declare the layout resource this fragment's view is inflated from.
+     * When a transaction adding the fragment is committed, the layout is
+     * inflated on a background thread so that it may be ready by the time
+     * the fragment creates its view.  Call this before the fragment is
+     * added, typically from its constructor.
+     *
+     * <p>The layout is inflated off the main thread, so it must not contain
+     * &lt;fragment&gt; tags or views that need a Looper when constructed.
+     *
+     * @param layoutResId The layout resource, or 0 for none.
+     * @see #getPreInflatedView(LayoutInflater, ViewGroup)
+     */
+    public void setPreInflateLayout(int layoutResId) {
+        mPreInflateLayoutId = layoutResId;
+    }
+
+    /**
+     * Return the view inflated ahead of time from the layout given to
+     * {@link #setPreInflateLayout}.  If it is not ready yet, the layout is
+     * inflated now with <var>inflater</var> instead.  Intended to be called
+     * from {@link #onCreateView}; the default implementation does so when a
+     * layout has been declared.
+     */
+    public View getPreInflatedView(LayoutInflater inflater, ViewGroup container) {
+        if (mPreInflation != null) {
+            View view = mPreInflation.take();
+            mPreInflation = null;
+            if (view != null) {
+                return view;
+            }
+        }
+        return inflater.inflate(mPreInflateLayoutId, container, false);
+    }
+
     /**
      * Report that this fragment would like to participate in populating
      * the options menu by receiving a call to {@link #onCreateOptionsMenu}
@@ -738,6 +824,7 @@ public class Fragment implements ComponentCallbacks, OnCreateContextMenuListener
             if (mHasMenu && isAdded() && !isHidden()) {
                 mActivity.invalidateOptionsMenu();
             }
+            updateLoaderPriority();
         }
     }
 
@@ -753,9 +840,30 @@ public class Fragment implements ComponentCallbacks, OnCreateContextMenuListener
         }
         mCheckedForLoaderManager = true;
         mLoaderManager = mActivity.getInternalCallbacks().getLoaderManager(mIndex, mLoadersStarted, true);
+        updateLoaderPriority();
         return mLoaderManager;
     }
 
+    /**
+     * Give our loaders a priority that follows our state: highest while we
+     * are resumed and visible, which includes not being an off-screen page
+     * whose menu has been hidden, then while we are started, and lowest
+     * while our loaders are only being retained.
+     */
+    void updateLoaderPriority() {
+        if (mLoaderManager != null) {
+            final int priority;
+            if (mResumed && !mHidden && mMenuVisible) {
+                priority = ModernAsyncTask.PRIORITY_HIGH;
+            } else if (mLoadersStarted) {
+                priority = ModernAsyncTask.PRIORITY_DEFAULT;
+            } else {
+                priority = ModernAsyncTask.PRIORITY_PREFETCH;
+            }
+            mLoaderManager.setLoaderPriority(priority);
+        }
+    }
+
     /**
      * Call {@link Activity#startActivity(Intent)} on the fragment's
      * containing Activity.
@@ -886,7 +994,8 @@ public class Fragment implements ComponentCallbacks, OnCreateContextMenuListener
     /**
      * Called to have the fragment instantiate its user interface view.
      * This is optional, and non-graphical fragments can return null (which
-     * is the default implementation).  This will be called between
+     * is the default implementation, unless a layout has been declared with
+     * {@link #setPreInflateLayout}).  This will be called between
      * {@link #onCreate(Bundle)} and {@link #onActivityCreated(Bundle)}.
      *
      * <p>If you return a View from here, you will later be called in
@@ -904,6 +1013,9 @@ public class Fragment implements ComponentCallbacks, OnCreateContextMenuListener
      */
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
             Bundle savedInstanceState) {
+        if (mPreInflateLayoutId != 0) {
+            return getPreInflatedView(inflater, container);
+        }
         return null;
     }
 
@@ -962,6 +1074,8 @@ public class Fragment implements ComponentCallbacks, OnCreateContextMenuListener
                 mLoaderManager = mActivity.getInternalCallbacks().getLoaderManager(mIndex, mLoadersStarted, false);
             }
             if (mLoaderManager != null) {
+                // Start the loaders at the priority of a started fragment.
+                updateLoaderPriority();
                 mLoaderManager.doStart();
             }
         }
@@ -1078,6 +1192,8 @@ public class Fragment implements ComponentCallbacks, OnCreateContextMenuListener
         mTag = null;
         mHidden = false;
         mDetached = false;
+        mViewReleased = false;
+        mPreInflation = null;
         mRetaining = false;
         mLoaderManager = null;
         mLoadersStarted = false;
@@ -1260,6 +1376,7 @@ public class Fragment implements ComponentCallbacks, OnCreateContextMenuListener
                 writer.print(" mInLayout="); writer.println(mInLayout);
         writer.print(prefix); writer.print("mHidden="); writer.print(mHidden);
                 writer.print(" mDetached="); writer.print(mDetached);
+                writer.print(" mViewReleased="); writer.print(mViewReleased);
                 writer.print(" mMenuVisible="); writer.print(mMenuVisible);
                 writer.print(" mHasMenu="); writer.println(mHasMenu);
         writer.print(prefix); writer.print("mRetainInstance="); writer.print(mRetainInstance);
@@ -1316,6 +1433,7 @@ public class Fragment implements ComponentCallbacks, OnCreateContextMenuListener
         if (mLoaderManager != null) {
             mLoaderManager.doReportStart();
         }
+        updateLoaderPriority();
     }
 
     void performStop() {
@@ -1336,6 +1454,7 @@ public class Fragment implements ComponentCallbacks, OnCreateContextMenuListener
                     mLoaderManager.doRetain();
                 }
             }
+            updateLoaderPriority();
         }
     }
 
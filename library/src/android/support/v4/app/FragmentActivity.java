@@ -40,6 +40,7 @@ import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
 import android.os.Parcelable;
+import android.support.v4.content.ModernAsyncTask;
 import android.support.v4.view.ActionMode;
 import android.support.v4.view.Menu;
 import android.support.v4.view.MenuInflater;
@@ -707,6 +708,7 @@ public class FragmentActivity extends Activity implements SupportActivity {
             mFragments.dispatchResume();
         }
         mFragments.dispatchPause();
+        updateLoaderPriority();
     }
 
     /**
@@ -729,6 +731,7 @@ public class FragmentActivity extends Activity implements SupportActivity {
         mHandler.removeMessages(MSG_RESUME_PENDING);
         mFragments.dispatchResume();
         mFragments.execPendingActions();
+        updateLoaderPriority();
     }
 
     @Override
@@ -911,9 +914,12 @@ public class FragmentActivity extends Activity implements SupportActivity {
         if (!mLoadersStarted) {
             mLoadersStarted = true;
             if (mLoaderManager != null) {
+                // Start the loaders at the priority of a started activity.
+                updateLoaderPriority();
                 mLoaderManager.doStart();
             } else if (!mCheckedForLoaderManager) {
                 mLoaderManager = getLoaderManager(-1, mLoadersStarted, false);
+                updateLoaderPriority();
             }
             mCheckedForLoaderManager = true;
         }
@@ -1057,6 +1063,7 @@ public class FragmentActivity extends Activity implements SupportActivity {
                     mLoaderManager.doRetain();
                 }
             }
+            updateLoaderPriority();
         }
 
         mFragments.dispatchReallyStop();
@@ -1216,9 +1223,28 @@ public class FragmentActivity extends Activity implements SupportActivity {
         }
         mCheckedForLoaderManager = true;
         mLoaderManager = getLoaderManager(-1, mLoadersStarted, true);
+        updateLoaderPriority();
         return mLoaderManager;
     }
 
+    /**
+     * Give our own loaders a priority that follows our state, as
+     * {@link Fragment} does for its loaders.
+     */
+    void updateLoaderPriority() {
+        if (mLoaderManager != null) {
+            final int priority;
+            if (mResumed) {
+                priority = ModernAsyncTask.PRIORITY_HIGH;
+            } else if (mLoadersStarted) {
+                priority = ModernAsyncTask.PRIORITY_DEFAULT;
+            } else {
+                priority = ModernAsyncTask.PRIORITY_PREFETCH;
+            }
+            mLoaderManager.setLoaderPriority(priority);
+        }
+    }
+
     LoaderManagerImpl getLoaderManager(int index, boolean started, boolean create) {
         if (mAllLoaderManagers == null) {
             mAllLoaderManagers = new HCSparseArray<LoaderManagerImpl>();
@@ -18,11 +18,16 @@ package android.support.v4.app;
 
 import android.content.Context;
 import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.Looper;
 import android.os.Parcel;
 import android.os.Parcelable;
+import android.os.SystemClock;
 import android.support.v4.util.DebugUtils;
 import android.support.v4.util.LogWriter;
 import android.support.v4.view.Menu;
@@ -38,15 +43,20 @@ import android.view.animation.DecelerateInterpolator;
 import android.view.animation.Interpolator;
 import android.view.animation.ScaleAnimation;
 import android.view.animation.Animation.AnimationListener;
+import android.view.LayoutInflater;
 import android.view.MenuInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.ImageView;
 import com.actionbarsherlock.R;
 
 import java.io.FileDescriptor;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
 
 /**
  * Static library support version of the framework's {@link android.app.FragmentManager}.
@@ -119,6 +129,39 @@ public abstract class FragmentManager {
         public void onBackStackChanged();
     }
 
+    /**
+     * Interface to watch for fragment views released by
+     * {@link FragmentManager#setReleaseHiddenViews(boolean, long)}.
+     */
+    public interface OnHiddenViewReleasedListener {
+        /**
+         * Called after the view hierarchy of a hidden fragment has been
+         * released.
+         *
+         * @param fragment The hidden fragment whose view was released.
+         * @param viewCount The number of views in the released hierarchy.
+         * @param bitmapBytes The size of the bitmaps drawn by the released
+         * hierarchy, in bytes.  Bitmaps that are still referenced elsewhere,
+         * such as cached resources, will not actually be freed.
+         */
+        public void onHiddenViewReleased(Fragment fragment, int viewCount, long bitmapBytes);
+    }
+
+    /**
+     * Interface to receive the time spent in fragment lifecycle callbacks.
+     * See {@link FragmentManager#setOnLifecycleTimingListener}.
+     */
+    public interface OnLifecycleTimingListener {
+        /**
+         * Called after a fragment lifecycle callback has returned.
+         *
+         * @param fragment The fragment whose callback was run.
+         * @param callback The name of the callback, such as "onCreateView".
+         * @param durationNanos The time spent in the callback, in nanoseconds.
+         */
+        public void onLifecycleTiming(Fragment fragment, String callback, long durationNanos);
+    }
+
     /**
      * Start a series of edit operations on the Fragments associated with
      * this FragmentManager.
@@ -326,6 +369,71 @@ public abstract class FragmentManager {
      */
     public abstract void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args);
 
+    /**
+     * Control whether the views of hidden fragments are released to save
+     * memory.  When enabled, a fragment hidden with
+     * {@link FragmentTransaction#hide(Fragment) FragmentTransaction.hide()}
+     * has its view hierarchy destroyed once it has been hidden for
+     * <var>idleMillis</var>, or as soon as
+     * {@link FragmentActivity#onLowMemory FragmentActivity.onLowMemory()} is
+     * called.  While released the fragment is kept in the created state, as
+     * if it were detached; showing it again rebuilds its view and restores
+     * the view state that was saved when it was released.
+     *
+     * <p>Fragments inflated from a layout are never released.
+     *
+     * @param enabled Whether hidden fragment views may be released.
+     * @param idleMillis How long a fragment must stay hidden before its view
+     * is released.  If zero or negative, views are only released when memory
+     * is low.
+     */
+    public abstract void setReleaseHiddenViews(boolean enabled, long idleMillis);
+
+    /**
+     * Set a listener to be told each time the view of a hidden fragment is
+     * released, or null to remove it.
+     *
+     * @see #setReleaseHiddenViews(boolean, long)
+     */
+    public abstract void setOnHiddenViewReleasedListener(OnHiddenViewReleasedListener listener);
+
+    /**
+     * Control whether the time spent in each fragment's onCreate(),
+     * onCreateView(), onActivityCreated(), onStart() and onResume() is
+     * measured.  Timings are accumulated per fragment class and tag and
+     * printed by {@link #dump}.  Timing is also enabled while a listener is
+     * set with {@link #setOnLifecycleTimingListener}.
+     */
+    public abstract void setLifecycleTimingEnabled(boolean enabled);
+
+    /**
+     * Set a listener to be told the duration of each timed fragment
+     * lifecycle callback, or null to remove it.
+     *
+     * @see #setLifecycleTimingEnabled(boolean)
+     */
+    public abstract void setOnLifecycleTimingListener(OnLifecycleTimingListener listener);
+
+    /**
+     * Set how many of the most recent back stack entries keep their
+     * fragment instances.  Fragments that are only referenced by older
+     * entries, all committed with
+     * {@link FragmentTransaction#allowBackStackCompaction()}, are destroyed
+     * once they fall beyond this depth, keeping only their class name,
+     * arguments and saved state; they are instantiated again when their
+     * entry is popped.  This keeps memory bounded no matter how deep the
+     * back stack grows.
+     *
+     * <p>Fragments that retain their instance, were inflated from a layout,
+     * or take part in a target fragment relationship are never compacted.
+     * A compacted fragment can not be found with {@link #findFragmentById}
+     * or {@link #findFragmentByTag} until its entry is popped.
+     *
+     * @param depth The number of entries to keep fully in memory, or zero
+     * (the default) to never compact the back stack.
+     */
+    public abstract void setBackStackCompactionDepth(int depth);
+
     /**
      * Control whether the framework's internal fragment manager debugging
      * logs are turned on.  If enabled, you will see output in logcat as
@@ -334,20 +442,91 @@ public abstract class FragmentManager {
     public static void enableDebugLogging(boolean enabled) {
         FragmentManagerImpl.DEBUG = enabled;
     }
+
+    /**
+     * Control whether the fragment state saved in
+     * {@link FragmentActivity#onSaveInstanceState FragmentActivity.onSaveInstanceState()}
+     * uses a compact encoding.  When enabled, fragment class names, tags,
+     * back stack names and bread crumb titles are written once to a shared
+     * string table, and back stack operations are delta-encoded.  This
+     * reduces the size of the saved state for activities with deep back
+     * stacks.  The setting only affects how state is written; state saved
+     * in either format can always be restored.
+     */
+    public static void enableCompactSavedState(boolean enabled) {
+        FragmentManagerImpl.COMPACT_SAVED_STATE = enabled;
+    }
 }
 
 final class FragmentManagerState implements Parcelable {
+    static final int FORMAT_DEFAULT = 0;
+    static final int FORMAT_COMPACT = 1;
+
+    /**
+     * Table of strings shared by all entries of a compact saved state.  Each
+     * distinct string is written once and referenced by its index; a null
+     * string is referenced as -1.
+     */
+    static final class StringPool {
+        final ArrayList<String> mStrings = new ArrayList<String>();
+        final HashMap<String, Integer> mIndices = new HashMap<String, Integer>();
+
+        int intern(String str) {
+            if (str == null) {
+                return -1;
+            }
+            Integer index = mIndices.get(str);
+            if (index == null) {
+                index = mStrings.size();
+                mIndices.put(str, index);
+                mStrings.add(str);
+            }
+            return index;
+        }
+
+        String[] toArray() {
+            return mStrings.toArray(new String[mStrings.size()]);
+        }
+
+        static String lookup(String[] strings, int index) {
+            return index >= 0 ? strings[index] : null;
+        }
+    }
+
     FragmentState[] mActive;
     int[] mAdded;
     BackStackState[] mBackStack;
+    boolean mCompact;
 
     public FragmentManagerState() {
     }
 
     public FragmentManagerState(Parcel in) {
-        mActive = in.createTypedArray(FragmentState.CREATOR);
-        mAdded = in.createIntArray();
-        mBackStack = in.createTypedArray(BackStackState.CREATOR);
+        if (in.readInt() == FORMAT_COMPACT) {
+            mCompact = true;
+            final String[] strings = in.createStringArray();
+            int N = in.readInt();
+            if (N >= 0) {
+                mActive = new FragmentState[N];
+                for (int i=0; i<N; i++) {
+                    if (in.readInt() != 0) {
+                        mActive[i] = new FragmentState(in, i, strings);
+                    }
+                }
+            }
+            mAdded = in.createIntArray();
+            N = in.readInt();
+            if (N >= 0) {
+                mBackStack = new BackStackState[N];
+                for (int i=0; i<N; i++) {
+                    mBackStack[i] = new BackStackState(in, strings);
+                }
+            }
+        } else {
+            mActive = in.createTypedArray(FragmentState.CREATOR);
+            mAdded = in.createIntArray();
+            mBackStack = in.createTypedArray(BackStackState.CREATOR);
+        }
     }
 
     public int describeContents() {
@@ -355,9 +534,57 @@ final class FragmentManagerState implements Parcelable {
     }
 
     public void writeToParcel(Parcel dest, int flags) {
-        dest.writeTypedArray(mActive, flags);
+        if (mCompact) {
+            dest.writeInt(FORMAT_COMPACT);
+            writeCompactToParcel(dest);
+        } else {
+            dest.writeInt(FORMAT_DEFAULT);
+            dest.writeTypedArray(mActive, flags);
+            dest.writeIntArray(mAdded);
+            dest.writeTypedArray(mBackStack, flags);
+        }
+    }
+
+    private void writeCompactToParcel(Parcel dest) {
+        // Collect all strings first so the table can precede the entries
+        // that reference it.
+        final StringPool pool = new StringPool();
+        if (mActive != null) {
+            for (int i=0; i<mActive.length; i++) {
+                if (mActive[i] != null) {
+                    mActive[i].internStrings(pool);
+                }
+            }
+        }
+        if (mBackStack != null) {
+            for (int i=0; i<mBackStack.length; i++) {
+                mBackStack[i].internStrings(pool);
+            }
+        }
+        dest.writeStringArray(pool.toArray());
+
+        if (mActive != null) {
+            dest.writeInt(mActive.length);
+            for (int i=0; i<mActive.length; i++) {
+                if (mActive[i] != null) {
+                    dest.writeInt(1);
+                    mActive[i].writeCompactToParcel(dest, pool);
+                } else {
+                    dest.writeInt(0);
+                }
+            }
+        } else {
+            dest.writeInt(-1);
+        }
         dest.writeIntArray(mAdded);
-        dest.writeTypedArray(mBackStack, flags);
+        if (mBackStack != null) {
+            dest.writeInt(mBackStack.length);
+            for (int i=0; i<mBackStack.length; i++) {
+                mBackStack[i].writeCompactToParcel(dest, pool);
+            }
+        } else {
+            dest.writeInt(-1);
+        }
     }
 
     public static final Parcelable.Creator<FragmentManagerState> CREATOR
@@ -377,6 +604,7 @@ final class FragmentManagerState implements Parcelable {
  */
 final class FragmentManagerImpl extends FragmentManager {
     static boolean DEBUG = false;
+    static boolean COMPACT_SAVED_STATE = false;
     static final String TAG = "FragmentManager";
 
     static final boolean HONEYCOMB = android.os.Build.VERSION.SDK_INT >= 11;
@@ -409,6 +637,95 @@ final class FragmentManagerImpl extends FragmentManager {
     boolean mDestroyed;
     String mNoTransactionsBecause;
 
+    boolean mReleaseHiddenViews;
+    long mReleaseHiddenViewsDelay;
+    OnHiddenViewReleasedListener mHiddenViewReleasedListener;
+
+    static final int TIMING_CREATE = 0;
+    static final int TIMING_CREATE_VIEW = 1;
+    static final int TIMING_ACTIVITY_CREATED = 2;
+    static final int TIMING_START = 3;
+    static final int TIMING_RESUME = 4;
+    static final String[] TIMING_NAMES = {
+        "onCreate", "onCreateView", "onActivityCreated", "onStart", "onResume"
+    };
+
+    /**
+     * Accumulated callback durations for one fragment class and tag.
+     */
+    static final class LifecycleTiming {
+        final int[] mCounts = new int[TIMING_NAMES.length];
+        final long[] mTotals = new long[TIMING_NAMES.length];
+        final long[] mMaximums = new long[TIMING_NAMES.length];
+    }
+
+    // Timing is only done while this is set, so that the cost when disabled
+    // is a single field check per callback.
+    boolean mTimeLifecycle;
+    boolean mLifecycleTimingEnabled;
+    OnLifecycleTimingListener mLifecycleTimingListener;
+    HashMap<String, LifecycleTiming> mLifecycleTimings;
+
+    int mBackStackCompactionDepth;
+    // Saved state of fragments compacted out of the back stack, by index.
+    // Their slots in mActive are null but stay reserved.
+    HCSparseArray<FragmentState> mCompacted;
+
+    /**
+     * Inflation of a fragment's layout on the pre-inflation thread.  The
+     * fragment takes the result when it creates its view; if the inflation
+     * has not completed by then it is cancelled and the fragment inflates
+     * the layout itself.
+     */
+    static final class PreInflation implements Runnable {
+        final LayoutInflater mInflater;
+        final int mLayoutId;
+        final ViewGroup mContainer;
+
+        // Guarded by this.
+        View mView;
+        boolean mCancelled;
+
+        PreInflation(LayoutInflater inflater, int layoutId, ViewGroup container) {
+            mInflater = inflater;
+            mLayoutId = layoutId;
+            mContainer = container;
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (mCancelled) {
+                    return;
+                }
+            }
+            View view = null;
+            try {
+                view = mInflater.inflate(mLayoutId, mContainer, false);
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Failed pre-inflating layout 0x"
+                        + Integer.toHexString(mLayoutId), e);
+            }
+            synchronized (this) {
+                mView = view;
+            }
+        }
+
+        /**
+         * Return the inflated view, or null if it is not ready.  Either way
+         * the pre-inflated view will not be available again.
+         */
+        synchronized View take() {
+            mCancelled = true;
+            View view = mView;
+            mView = null;
+            return view;
+        }
+    }
+
+    static HandlerThread sPreInflateThread;
+    static Handler sPreInflateHandler;
+
     // Temporary vars for state save and restore.
     Bundle mStateBundle = null;
     SparseArray<Parcelable> mStateArray = null;
@@ -420,6 +737,13 @@ final class FragmentManagerImpl extends FragmentManager {
         }
     };
 
+    Runnable mExecReleaseHiddenViews = new Runnable() {
+        @Override
+        public void run() {
+            releaseHiddenViews(mReleaseHiddenViewsDelay);
+        }
+    };
+
     @Override
     public FragmentTransaction beginTransaction() {
         return new BackStackRecord(this);
@@ -549,6 +873,63 @@ final class FragmentManagerImpl extends FragmentManager {
         return null;
     }
 
+    @Override
+    public void setReleaseHiddenViews(boolean enabled, long idleMillis) {
+        mReleaseHiddenViews = enabled;
+        mReleaseHiddenViewsDelay = idleMillis;
+        if (mActivity != null) {
+            mActivity.getInternalCallbacks().getHandler().removeCallbacks(mExecReleaseHiddenViews);
+        }
+        if (enabled && idleMillis > 0) {
+            scheduleReleaseHiddenViews(idleMillis);
+        }
+    }
+
+    @Override
+    public void setOnHiddenViewReleasedListener(OnHiddenViewReleasedListener listener) {
+        mHiddenViewReleasedListener = listener;
+    }
+
+    @Override
+    public void setBackStackCompactionDepth(int depth) {
+        mBackStackCompactionDepth = depth;
+        compactBackStack();
+    }
+
+    @Override
+    public void setLifecycleTimingEnabled(boolean enabled) {
+        mLifecycleTimingEnabled = enabled;
+        mTimeLifecycle = enabled || mLifecycleTimingListener != null;
+    }
+
+    @Override
+    public void setOnLifecycleTimingListener(OnLifecycleTimingListener listener) {
+        mLifecycleTimingListener = listener;
+        mTimeLifecycle = mLifecycleTimingEnabled || listener != null;
+    }
+
+    void noteLifecycleTiming(Fragment f, int callback, long startNanos) {
+        final long duration = System.nanoTime() - startNanos;
+        if (mLifecycleTimings == null) {
+            mLifecycleTimings = new HashMap<String, LifecycleTiming>();
+        }
+        final String key = f.mTag != null
+                ? f.getClass().getName() + "#" + f.mTag : f.getClass().getName();
+        LifecycleTiming timing = mLifecycleTimings.get(key);
+        if (timing == null) {
+            timing = new LifecycleTiming();
+            mLifecycleTimings.put(key, timing);
+        }
+        timing.mCounts[callback]++;
+        timing.mTotals[callback] += duration;
+        if (duration > timing.mMaximums[callback]) {
+            timing.mMaximums[callback] = duration;
+        }
+        if (mLifecycleTimingListener != null) {
+            mLifecycleTimingListener.onLifecycleTiming(f, TIMING_NAMES[callback], duration);
+        }
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder(128);
@@ -650,6 +1031,25 @@ final class FragmentManagerImpl extends FragmentManager {
             }
         }
 
+        if (mLifecycleTimings != null && mLifecycleTimings.size() > 0) {
+            writer.print(prefix); writer.println("Lifecycle Timings:");
+            for (Map.Entry<String, LifecycleTiming> entry : mLifecycleTimings.entrySet()) {
+                LifecycleTiming timing = entry.getValue();
+                writer.print(prefix); writer.print("  "); writer.print(entry.getKey());
+                        writer.println(":");
+                for (int i=0; i<TIMING_NAMES.length; i++) {
+                    if (timing.mCounts[i] == 0) {
+                        continue;
+                    }
+                    writer.print(innerPrefix); writer.print(TIMING_NAMES[i]);
+                            writer.print(": count="); writer.print(timing.mCounts[i]);
+                            writer.print(" total="); writer.print(timing.mTotals[i]/1000);
+                            writer.print("us max="); writer.print(timing.mMaximums[i]/1000);
+                            writer.println("us");
+                }
+            }
+        }
+
         writer.print(prefix); writer.println("FragmentManager misc state:");
         writer.print(prefix); writer.print("  mCurState="); writer.print(mCurState);
                 writer.print(" mStateSaved="); writer.print(mStateSaved);
@@ -658,6 +1058,12 @@ final class FragmentManagerImpl extends FragmentManager {
             writer.print(prefix); writer.print("  mNeedMenuInvalidate=");
                     writer.println(mNeedMenuInvalidate);
         }
+        if (mReleaseHiddenViews) {
+            writer.print(prefix); writer.print("  mReleaseHiddenViews=");
+                    writer.print(mReleaseHiddenViews);
+                    writer.print(" mReleaseHiddenViewsDelay=");
+                    writer.println(mReleaseHiddenViewsDelay);
+        }
         if (mNoTransactionsBecause != null) {
             writer.print(prefix); writer.print("  mNoTransactionsBecause=");
                     writer.println(mNoTransactionsBecause);
@@ -666,6 +1072,12 @@ final class FragmentManagerImpl extends FragmentManager {
             writer.print(prefix); writer.print("  mAvailIndices: ");
                     writer.println(Arrays.toString(mAvailIndices.toArray()));
         }
+        if (mBackStackCompactionDepth > 0) {
+            writer.print(prefix); writer.print("  mBackStackCompactionDepth=");
+                    writer.print(mBackStackCompactionDepth);
+                    writer.print(" compacted=");
+                    writer.println(mCompacted != null ? mCompacted.size() : 0);
+        }
     }
 
     static final Interpolator DECELERATE_QUINT = new DecelerateInterpolator(2.5f);
@@ -675,6 +1087,87 @@ final class FragmentManagerImpl extends FragmentManager {
 
     static final int ANIM_DUR = 220;
 
+    static final int MAX_CACHED_ANIMATIONS = 4;
+
+    // Animations previously returned by loadAnimation(), keyed by animation
+    // resource or by negated style index.  An instance is handed out again
+    // once it has finished running, so that rapid transitions do not
+    // re-inflate animation XML or rebuild the animation sets every time.
+    HCSparseArray<ArrayList<CachedAnimation>> mAnimationCache;
+
+    /**
+     * A cached animation along with the view it was last handed out for.
+     */
+    static final class CachedAnimation {
+        final Animation mAnimation;
+        View mView;
+
+        CachedAnimation(Animation animation, View view) {
+            mAnimation = animation;
+            mView = view;
+        }
+
+        /**
+         * Whether the animation can be handed out again: it has finished,
+         * or it will never run on the view it was handed out for because
+         * that view dropped it or left the hierarchy before drawing it.
+         */
+        boolean isReusable() {
+            if (mAnimation.hasEnded() || mView == null
+                    || mView.getAnimation() != mAnimation) {
+                return true;
+            }
+            if (mView.getParent() == null && mView.getWindowToken() == null) {
+                // Detached without running; make sure the view will not
+                // start it should it be attached again.
+                mView.clearAnimation();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    Animation obtainCachedAnimation(int key, View view) {
+        if (mAnimationCache == null) {
+            return null;
+        }
+        ArrayList<CachedAnimation> anims = mAnimationCache.get(key);
+        if (anims != null) {
+            for (int i=0; i<anims.size(); i++) {
+                CachedAnimation cached = anims.get(i);
+                if (cached.isReusable()) {
+                    Animation anim = cached.mAnimation;
+                    anim.reset();
+                    anim.setAnimationListener(null);
+                    // Mark it as pending right away so it is not handed out
+                    // twice before it starts running.
+                    anim.setStartTime(Animation.START_ON_FIRST_FRAME);
+                    cached.mView = view;
+                    return anim;
+                }
+            }
+        }
+        return null;
+    }
+
+    Animation cacheAnimation(int key, Animation anim, View view) {
+        if (anim == null) {
+            return null;
+        }
+        if (mAnimationCache == null) {
+            mAnimationCache = new HCSparseArray<ArrayList<CachedAnimation>>();
+        }
+        ArrayList<CachedAnimation> anims = mAnimationCache.get(key);
+        if (anims == null) {
+            anims = new ArrayList<CachedAnimation>(2);
+            mAnimationCache.put(key, anims);
+        }
+        if (anims.size() < MAX_CACHED_ANIMATIONS) {
+            anims.add(new CachedAnimation(anim, view));
+        }
+        return anim;
+    }
+
     static Animation makeOpenCloseAnimation(Context context, float startScale,
             float endScale, float startAlpha, float endAlpha) {
         AnimationSet set = new AnimationSet(false);
@@ -706,7 +1199,12 @@ final class FragmentManagerImpl extends FragmentManager {
         }
 
         if (fragment.mNextAnim != 0) {
-            Animation anim = AnimationUtils.loadAnimation(mActivity.asActivity(), fragment.mNextAnim);
+            Animation anim = obtainCachedAnimation(fragment.mNextAnim, fragment.mView);
+            if (anim == null) {
+                anim = cacheAnimation(fragment.mNextAnim,
+                        AnimationUtils.loadAnimation(mActivity.asActivity(), fragment.mNextAnim),
+                        fragment.mView);
+            }
             if (anim != null) {
                 return anim;
             }
@@ -721,19 +1219,36 @@ final class FragmentManagerImpl extends FragmentManager {
             return null;
         }
 
+        Animation anim = obtainCachedAnimation(-styleIndex, fragment.mView);
+        if (anim != null) {
+            return anim;
+        }
+
         switch (styleIndex) {
             case ANIM_STYLE_OPEN_ENTER:
-                return makeOpenCloseAnimation(mActivity.asActivity(), 1.125f, 1.0f, 0, 1);
+                return cacheAnimation(-styleIndex,
+                        makeOpenCloseAnimation(mActivity.asActivity(), 1.125f, 1.0f, 0, 1),
+                        fragment.mView);
             case ANIM_STYLE_OPEN_EXIT:
-                return makeOpenCloseAnimation(mActivity.asActivity(), 1.0f, .975f, 1, 0);
+                return cacheAnimation(-styleIndex,
+                        makeOpenCloseAnimation(mActivity.asActivity(), 1.0f, .975f, 1, 0),
+                        fragment.mView);
             case ANIM_STYLE_CLOSE_ENTER:
-                return makeOpenCloseAnimation(mActivity.asActivity(), .975f, 1.0f, 0, 1);
+                return cacheAnimation(-styleIndex,
+                        makeOpenCloseAnimation(mActivity.asActivity(), .975f, 1.0f, 0, 1),
+                        fragment.mView);
             case ANIM_STYLE_CLOSE_EXIT:
-                return makeOpenCloseAnimation(mActivity.asActivity(), 1.0f, 1.075f, 1, 0);
+                return cacheAnimation(-styleIndex,
+                        makeOpenCloseAnimation(mActivity.asActivity(), 1.0f, 1.075f, 1, 0),
+                        fragment.mView);
             case ANIM_STYLE_FADE_ENTER:
-                return makeFadeAnimation(mActivity.asActivity(), 0, 1);
+                return cacheAnimation(-styleIndex,
+                        makeFadeAnimation(mActivity.asActivity(), 0, 1),
+                        fragment.mView);
             case ANIM_STYLE_FADE_EXIT:
-                return makeFadeAnimation(mActivity.asActivity(), 1, 0);
+                return cacheAnimation(-styleIndex,
+                        makeFadeAnimation(mActivity.asActivity(), 1, 0),
+                        fragment.mView);
         }
 
         if (transitionStyle == 0 && mActivity.getWindow() != null) {
@@ -765,6 +1280,11 @@ final class FragmentManagerImpl extends FragmentManager {
             // While removing a fragment, we can't change it to a higher state.
             newState = f.mState;
         }
+        // Hidden fragments whose view has been released also sit in the
+        // onCreate() state until they are shown again.
+        if (f.mViewReleased && newState > Fragment.CREATED) {
+            newState = Fragment.CREATED;
+        }
 
         if (f.mState < newState) {
             // For fragments that are created from a layout, when restoring from
@@ -806,7 +1326,9 @@ final class FragmentManagerImpl extends FragmentManager {
 
                     if (!f.mRetaining) {
                         f.mCalled = false;
+                        final long start = mTimeLifecycle ? System.nanoTime() : 0;
                         f.onCreate(f.mSavedFragmentState);
+                        if (mTimeLifecycle) noteLifecycleTiming(f, TIMING_CREATE, start);
                         if (!f.mCalled) {
                             throw new SuperNotCalledException("Fragment " + f
                                     + " did not call through to super.onCreate()");
@@ -817,8 +1339,10 @@ final class FragmentManagerImpl extends FragmentManager {
                         // For fragments that are part of the content view
                         // layout, we need to instantiate the view immediately
                         // and the inflater will take care of adding it.
+                        final long start = mTimeLifecycle ? System.nanoTime() : 0;
                         f.mView = f.onCreateView(f.getLayoutInflater(f.mSavedFragmentState),
                                 null, f.mSavedFragmentState);
+                        if (mTimeLifecycle) noteLifecycleTiming(f, TIMING_CREATE_VIEW, start);
                         if (f.mView != null) {
                             f.mInnerView = f.mView;
                             f.mView = NoSaveStateFrameLayout.wrap(f.mView);
@@ -842,8 +1366,10 @@ final class FragmentManagerImpl extends FragmentManager {
                                 }
                             }
                             f.mContainer = container;
+                            final long start = mTimeLifecycle ? System.nanoTime() : 0;
                             f.mView = f.onCreateView(f.getLayoutInflater(f.mSavedFragmentState),
                                     container, f.mSavedFragmentState);
+                            if (mTimeLifecycle) noteLifecycleTiming(f, TIMING_CREATE_VIEW, start);
                             if (f.mView != null) {
                                 f.mInnerView = f.mView;
                                 f.mView = NoSaveStateFrameLayout.wrap(f.mView);
@@ -863,7 +1389,9 @@ final class FragmentManagerImpl extends FragmentManager {
                         }
 
                         f.mCalled = false;
+                        final long start = mTimeLifecycle ? System.nanoTime() : 0;
                         f.onActivityCreated(f.mSavedFragmentState);
+                        if (mTimeLifecycle) noteLifecycleTiming(f, TIMING_ACTIVITY_CREATED, start);
                         if (!f.mCalled) {
                             throw new SuperNotCalledException("Fragment " + f
                                     + " did not call through to super.onActivityCreated()");
@@ -878,7 +1406,9 @@ final class FragmentManagerImpl extends FragmentManager {
                     if (newState > Fragment.STOPPED) {
                         if (DEBUG) Log.v(TAG, "moveto STARTED: " + f);
                         f.mCalled = false;
+                        final long start = mTimeLifecycle ? System.nanoTime() : 0;
                         f.performStart();
+                        if (mTimeLifecycle) noteLifecycleTiming(f, TIMING_START, start);
                         if (!f.mCalled) {
                             throw new SuperNotCalledException("Fragment " + f
                                     + " did not call through to super.onStart()");
@@ -889,13 +1419,16 @@ final class FragmentManagerImpl extends FragmentManager {
                         if (DEBUG) Log.v(TAG, "moveto RESUMED: " + f);
                         f.mCalled = false;
                         f.mResumed = true;
+                        final long start = mTimeLifecycle ? System.nanoTime() : 0;
                         f.onResume();
+                        if (mTimeLifecycle) noteLifecycleTiming(f, TIMING_RESUME, start);
                         if (!f.mCalled) {
                             throw new SuperNotCalledException("Fragment " + f
                                     + " did not call through to super.onResume()");
                         }
                         f.mSavedFragmentState = null;
                         f.mSavedViewState = null;
+                        f.updateLoaderPriority();
                     }
             }
         } else if (f.mState > newState) {
@@ -910,6 +1443,7 @@ final class FragmentManagerImpl extends FragmentManager {
                                     + " did not call through to super.onPause()");
                         }
                         f.mResumed = false;
+                        f.updateLoaderPriority();
                     }
                 case Fragment.STARTED:
                     if (newState < Fragment.STARTED) {
@@ -1046,12 +1580,25 @@ final class FragmentManagerImpl extends FragmentManager {
             return;
         }
 
+        final int oldState = mCurState;
         mCurState = newState;
         if (mActive != null) {
-            for (int i=0; i<mActive.size(); i++) {
-                Fragment f = mActive.get(i);
-                if (f != null) {
-                    moveToState(f, newState, transit, transitStyle);
+            if (oldState >= Fragment.CREATED && newState >= Fragment.CREATED) {
+                // Fragments that are not added are held in the CREATED
+                // state, which they have already reached, so only the added
+                // fragments can change.  This keeps start, resume and pause
+                // cheap when many detached or back stack fragments are active.
+                if (mAdded != null) {
+                    for (int i=0; i<mAdded.size(); i++) {
+                        moveToState(mAdded.get(i), newState, transit, transitStyle);
+                    }
+                }
+            } else {
+                for (int i=0; i<mActive.size(); i++) {
+                    Fragment f = mActive.get(i);
+                    if (f != null) {
+                        moveToState(f, newState, transit, transitStyle);
+                    }
                 }
             }
 
@@ -1133,6 +1680,10 @@ final class FragmentManagerImpl extends FragmentManager {
         if (DEBUG) Log.v(TAG, "hide: " + fragment);
         if (!fragment.mHidden) {
             fragment.mHidden = true;
+            fragment.mHiddenTime = SystemClock.uptimeMillis();
+            if (mReleaseHiddenViews && mReleaseHiddenViewsDelay > 0) {
+                scheduleReleaseHiddenViews(mReleaseHiddenViewsDelay);
+            }
             if (fragment.mView != null) {
                 Animation anim = loadAnimation(fragment, transition, true,
                         transitionStyle);
@@ -1145,6 +1696,7 @@ final class FragmentManagerImpl extends FragmentManager {
                 mNeedMenuInvalidate = true;
             }
             fragment.onHiddenChanged(true);
+            fragment.updateLoaderPriority();
         }
     }
 
@@ -1152,7 +1704,13 @@ final class FragmentManagerImpl extends FragmentManager {
         if (DEBUG) Log.v(TAG, "show: " + fragment);
         if (fragment.mHidden) {
             fragment.mHidden = false;
-            if (fragment.mView != null) {
+            if (fragment.mViewReleased) {
+                // Rebuild the view that was released while hidden; it will
+                // run its enter animation as it is added to the container.
+                if (DEBUG) Log.v(TAG, "rebuilding released view: " + fragment);
+                fragment.mViewReleased = false;
+                moveToState(fragment, mCurState, transition, transitionStyle);
+            } else if (fragment.mView != null) {
                 Animation anim = loadAnimation(fragment, transition, true,
                         transitionStyle);
                 if (anim != null) {
@@ -1164,6 +1722,7 @@ final class FragmentManagerImpl extends FragmentManager {
                 mNeedMenuInvalidate = true;
             }
             fragment.onHiddenChanged(false);
+            fragment.updateLoaderPriority();
         }
     }
 
@@ -1198,6 +1757,86 @@ final class FragmentManagerImpl extends FragmentManager {
         }
     }
 
+    void scheduleReleaseHiddenViews(long delayMillis) {
+        if (mActivity != null) {
+            Handler handler = mActivity.getInternalCallbacks().getHandler();
+            handler.removeCallbacks(mExecReleaseHiddenViews);
+            handler.postDelayed(mExecReleaseHiddenViews, delayMillis);
+        }
+    }
+
+    /**
+     * Release the views of all hidden fragments that have been hidden for at
+     * least <var>minIdleMillis</var>.  If any remaining hidden fragments will
+     * become eligible later, another pass is scheduled for them.
+     */
+    void releaseHiddenViews(long minIdleMillis) {
+        if (!mReleaseHiddenViews || mAdded == null || mDestroyed) {
+            return;
+        }
+        final long now = SystemClock.uptimeMillis();
+        long nextRelease = Long.MAX_VALUE;
+        for (int i=0; i<mAdded.size(); i++) {
+            Fragment f = mAdded.get(i);
+            if (f == null || !f.mHidden || f.mViewReleased || f.mView == null
+                    || f.mFromLayout || f.mAnimatingAway != null
+                    || f.mState < Fragment.ACTIVITY_CREATED) {
+                continue;
+            }
+            final long idle = now - f.mHiddenTime;
+            if (idle >= minIdleMillis) {
+                releaseView(f);
+            } else if (minIdleMillis - idle < nextRelease) {
+                nextRelease = minIdleMillis - idle;
+            }
+        }
+        if (nextRelease != Long.MAX_VALUE) {
+            scheduleReleaseHiddenViews(nextRelease);
+        }
+    }
+
+    void releaseView(Fragment f) {
+        long[] counts = new long[2];
+        countViewHierarchy(f.mView, counts);
+        f.mViewReleased = true;
+        f.mNextAnim = 0;
+        moveToState(f, Fragment.CREATED, 0, 0);
+        if (DEBUG) Log.v(TAG, "Released view of hidden " + f + ": " + counts[0]
+                + " views, " + counts[1] + " bitmap bytes");
+        if (mHiddenViewReleasedListener != null) {
+            mHiddenViewReleasedListener.onHiddenViewReleased(f, (int)counts[0], counts[1]);
+        }
+    }
+
+    /**
+     * Add the number of views in the hierarchy rooted at <var>view</var> to
+     * <code>counts[0]</code> and the size of the bitmaps they draw to
+     * <code>counts[1]</code>.
+     */
+    static void countViewHierarchy(View view, long[] counts) {
+        counts[0]++;
+        counts[1] += bitmapBytes(view.getBackground());
+        if (view instanceof ImageView) {
+            counts[1] += bitmapBytes(((ImageView)view).getDrawable());
+        }
+        if (view instanceof ViewGroup) {
+            ViewGroup group = (ViewGroup)view;
+            for (int i=0; i<group.getChildCount(); i++) {
+                countViewHierarchy(group.getChildAt(i), counts);
+            }
+        }
+    }
+
+    static long bitmapBytes(Drawable drawable) {
+        if (drawable instanceof BitmapDrawable) {
+            Bitmap bitmap = ((BitmapDrawable)drawable).getBitmap();
+            if (bitmap != null && !bitmap.isRecycled()) {
+                return (long)bitmap.getRowBytes() * bitmap.getHeight();
+            }
+        }
+        return 0;
+    }
+
     public Fragment findFragmentById(int id) {
         if (!HONEYCOMB && (id == android.R.id.content)) {
             // android.R.id.content would point to the entire content area,
@@ -1392,14 +2031,132 @@ final class FragmentManagerImpl extends FragmentManager {
         }
     }
 
+    /**
+     * Start inflating the declared layout of a fragment that is about to be
+     * added, so that its view may be ready by the time the transaction runs.
+     */
+    void preInflateView(Fragment f) {
+        if (f.mPreInflateLayoutId == 0 || f.mView != null || f.mPreInflation != null
+                || mActivity == null || mDestroyed) {
+            return;
+        }
+        ViewGroup container = null;
+        if (f.mContainerId != 0) {
+            container = (ViewGroup)mActivity.findViewById(f.mContainerId);
+            if (container == null) {
+                // No layout params to inflate with yet.
+                return;
+            }
+        }
+        if (sPreInflateHandler == null) {
+            sPreInflateThread = new HandlerThread("FragmentPreInflate",
+                    android.os.Process.THREAD_PRIORITY_BACKGROUND);
+            sPreInflateThread.start();
+            sPreInflateHandler = new Handler(sPreInflateThread.getLooper());
+        }
+        if (DEBUG) Log.v(TAG, "Pre-inflating view of " + f);
+        LayoutInflater inflater = mActivity.getLayoutInflater().cloneInContext(
+                mActivity.asActivity());
+        f.mPreInflation = new PreInflation(inflater, f.mPreInflateLayoutId, container);
+        sPreInflateHandler.post(f.mPreInflation);
+    }
+
     void addBackStackState(BackStackRecord state) {
         if (mBackStack == null) {
             mBackStack = new ArrayList<BackStackRecord>();
         }
         mBackStack.add(state);
+        compactBackStack();
         reportBackStackChanged();
     }
 
+    /**
+     * Release the fragments that are only referenced by back stack entries
+     * beyond {@link #mBackStackCompactionDepth}, keeping just their state.
+     */
+    void compactBackStack() {
+        if (mBackStackCompactionDepth <= 0 || mBackStack == null || mActivity == null) {
+            return;
+        }
+        final int deep = mBackStack.size() - mBackStackCompactionDepth;
+        if (deep <= 0) {
+            return;
+        }
+
+        // Fragments still used by recent entries, by entries that did not
+        // allow compaction or by target references must be kept as they are.
+        HashSet<Fragment> keep = new HashSet<Fragment>();
+        for (int i=deep; i<mBackStack.size(); i++) {
+            mBackStack.get(i).collectFragments(keep);
+        }
+        for (int i=0; i<mActive.size(); i++) {
+            Fragment f = mActive.get(i);
+            if (f != null && f.mTarget != null) {
+                keep.add(f.mTarget);
+            }
+        }
+
+        HashSet<Fragment> candidates = new HashSet<Fragment>();
+        for (int i=0; i<deep; i++) {
+            BackStackRecord bss = mBackStack.get(i);
+            if (bss.mAllowCompaction) {
+                bss.recordFragmentIndices();
+                bss.collectFragments(candidates);
+            } else {
+                bss.collectFragments(keep);
+            }
+        }
+        for (Fragment f : candidates) {
+            if (!keep.contains(f) && !f.mAdded && f.mState == Fragment.CREATED
+                    && f.mAnimatingAway == null && !f.mFromLayout
+                    && !f.mRetainInstance && f.mTarget == null) {
+                compactFragment(f);
+            }
+        }
+        for (int i=0; i<deep; i++) {
+            BackStackRecord bss = mBackStack.get(i);
+            if (bss.mAllowCompaction) {
+                bss.releaseCompactedFragments();
+            }
+        }
+    }
+
+    void compactFragment(Fragment f) {
+        if (DEBUG) Log.v(TAG, "Compacting back stack fragment: " + f);
+        final int index = f.mIndex;
+        FragmentState fs = new FragmentState(f);
+        fs.mSavedFragmentState = saveFragmentBasicState(f);
+        fs.mBackStackNesting = f.mBackStackNesting;
+
+        moveToState(f, Fragment.INITIALIZING, 0, 0);
+
+        // makeInactive() has freed the index; keep it reserved so the back
+        // stack entries can find the fragment again.
+        mAvailIndices.remove(mAvailIndices.size()-1);
+        if (mCompacted == null) {
+            mCompacted = new HCSparseArray<FragmentState>();
+        }
+        mCompacted.put(index, fs);
+    }
+
+    Fragment restoreCompactedFragment(int index) {
+        Fragment f = mActive.get(index);
+        if (f != null) {
+            // Already restored for another entry.
+            return f;
+        }
+        FragmentState fs = mCompacted.get(index);
+        mCompacted.remove(index);
+        f = fs.instantiate(mActivity);
+        fs.mInstance = null;
+        f.mBackStackNesting = fs.mBackStackNesting;
+        if (DEBUG) Log.v(TAG, "Restoring compacted back stack fragment: " + f);
+        mActive.set(index, f);
+        // Bring it back to where it was before being compacted.
+        moveToState(f, Fragment.CREATED, 0, 0);
+        return f;
+    }
+
     boolean popBackStackState(Handler handler, String name, int id, int flags) {
         if (mBackStack == null) {
             return false;
@@ -1410,6 +2167,7 @@ final class FragmentManagerImpl extends FragmentManager {
                 return false;
             }
             final BackStackRecord bss = mBackStack.remove(last);
+            bss.restoreCompactedFragments();
             bss.popFromBackStack(true);
             reportBackStackChanged();
         } else {
@@ -1456,6 +2214,7 @@ final class FragmentManagerImpl extends FragmentManager {
             final int LAST = states.size()-1;
             for (int i=0; i<=LAST; i++) {
                 if (DEBUG) Log.v(TAG, "Popping back stack state: " + states.get(i));
+                states.get(i).restoreCompactedFragments();
                 states.get(i).popFromBackStack(i == LAST);
             }
             reportBackStackChanged();
@@ -1551,7 +2310,11 @@ final class FragmentManagerImpl extends FragmentManager {
         boolean haveFragments = false;
         for (int i=0; i<N; i++) {
             Fragment f = mActive.get(i);
-            if (f != null) {
+            if (f == null && mCompacted != null && mCompacted.get(i) != null) {
+                // Compacted back stack fragments already have their state.
+                haveFragments = true;
+                active[i] = mCompacted.get(i);
+            } else if (f != null) {
                 haveFragments = true;
 
                 FragmentState fs = new FragmentState(f);
@@ -1627,6 +2390,7 @@ final class FragmentManagerImpl extends FragmentManager {
         fms.mActive = active;
         fms.mAdded = added;
         fms.mBackStack = backStack;
+        fms.mCompact = COMPACT_SAVED_STATE;
         return fms;
     }
 
@@ -1664,6 +2428,7 @@ final class FragmentManagerImpl extends FragmentManager {
         if (mAvailIndices != null) {
             mAvailIndices.clear();
         }
+        mCompacted = null;
         for (int i=0; i<fms.mActive.length; i++) {
             FragmentState fs = fms.mActive[i];
             if (fs != null) {
@@ -1783,8 +2548,13 @@ final class FragmentManagerImpl extends FragmentManager {
 
     public void dispatchDestroy() {
         mDestroyed = true;
+        if (mActivity != null) {
+            mActivity.getInternalCallbacks().getHandler().removeCallbacks(mExecReleaseHiddenViews);
+        }
         execPendingActions();
         moveToState(Fragment.INITIALIZING, false);
+        mAnimationCache = null;
+        mCompacted = null;
         mActivity = null;
     }
 
@@ -1800,6 +2570,9 @@ final class FragmentManagerImpl extends FragmentManager {
     }
 
     public void dispatchLowMemory() {
+        if (mReleaseHiddenViews) {
+            releaseHiddenViews(0);
+        }
         if (mActive != null) {
             for (int i=0; i<mAdded.size(); i++) {
                 Fragment f = mAdded.get(i);
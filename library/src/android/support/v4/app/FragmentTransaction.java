@@ -213,6 +213,16 @@ public abstract class FragmentTransaction {
      */
     public abstract FragmentTransaction disallowAddToBackStack();
 
+    /**
+     * Allow the fragments removed or replaced by this transaction to be
+     * released once its back stack entry falls beyond the depth set with
+     * {@link FragmentManager#setBackStackCompactionDepth(int)}.  They are
+     * destroyed and, when the entry is popped, replaced by new instances
+     * built from their saved state, so the caller must not keep references
+     * to them.
+     */
+    public abstract FragmentTransaction allowBackStackCompaction();
+
     /**
      * Set the full title to show as a bread crumb when this transaction
      * is on the back stack, as used by {@link FragmentBreadCrumbs}.
@@ -17,13 +17,20 @@
 package android.support.v4.app;
 
 import android.os.Bundle;
+import android.os.Handler;
+import android.support.v4.content.AsyncTaskLoader;
 import android.support.v4.content.Loader;
+import android.support.v4.content.LoaderResultCache;
+import android.support.v4.content.LoaderStats;
+import android.support.v4.content.ModernAsyncTask;
+import android.support.v4.content.ProgressiveLoader;
 import android.support.v4.util.DebugUtils;
 import android.util.Log;
 
 import java.io.FileDescriptor;
 import java.io.PrintWriter;
 import java.lang.reflect.Modifier;
+import java.util.Arrays;
 
 /**
  * Static library support version of the framework's {@link android.app.LoaderManager}.
@@ -113,6 +120,11 @@ public abstract class LoaderManager {
      * be called immediately (inside of this function), so you must be prepared
      * for this to happen.
      *
+     * <p>If a new loader is created, it is cacheable and the
+     * {@link LoaderResultCache} holds a result for the same loader class and
+     * arguments, that result is reported as the loader's data right away
+     * (once started), and the loader then loads fresh data as usual.
+     *
      * @param id A unique identifier for this loader.  Can be whatever you want.
      * Identifiers are scoped to a particular LoaderManager instance.
      * @param args Optional arguments to supply to the loader at construction.
@@ -156,6 +168,35 @@ public abstract class LoaderManager {
      */
     public abstract <D> Loader<D> getLoader(int id);
 
+    /**
+     * Group loaders so that their results are delivered together.  The next
+     * result of each loader in the group is held back until every member
+     * has one, or until <var>timeoutMillis</var> have passed, and the held
+     * results are then all delivered to
+     * {@link LoaderCallbacks#onLoadFinished} in the same main thread turn.
+     * This saves a layout pass, and any flicker, per loader on screens that
+     * show the data of several loaders.
+     *
+     * <p>Call this before initializing or restarting the loaders.  The group
+     * only covers one round of results: only the first result of each member
+     * is held, and only if the application has not yet received data from
+     * that loader.  Any later result is delivered right away, since the
+     * loader may already have released the data it replaces.  Destroying a
+     * member releases the group from waiting on it.  The partial results of
+     * a {@link android.support.v4.content.ProgressiveLoader} are delivered
+     * right away, and the group waits for its complete result.
+     *
+     * @param timeoutMillis The longest time to hold back results.
+     * @param ids The ids of the loaders in the group.
+     */
+    public abstract void groupLoaders(long timeoutMillis, int... ids);
+
+    /**
+     * Return a snapshot of the performance counters of the loader with the
+     * given id, or null if there is no such loader.  See {@link LoaderStats}.
+     */
+    public abstract LoaderStats getLoaderStats(int id);
+
     /**
      * Print the LoaderManager's state into the given stream.
      *
@@ -198,6 +239,88 @@ class LoaderManagerImpl extends LoaderManager {
 
     boolean mCreatingLoader;
 
+    // Priority of our loaders' loads, following the state of our host.
+    int mLoaderPriority = ModernAsyncTask.PRIORITY_DEFAULT;
+
+    // Pending loader groups, by the id of each member loader.
+    HCSparseArray<LoaderGroup> mGroups;
+    Handler mHandler;
+
+    /**
+     * Loaders whose next results are held back until all of them have
+     * one, or the group times out.
+     */
+    final class LoaderGroup implements Runnable {
+        final int[] mIds;
+        final boolean[] mFinished;
+        boolean mFlushed;
+
+        LoaderGroup(int[] ids) {
+            mIds = ids;
+            mFinished = new boolean[ids.length];
+        }
+
+        /**
+         * Note that loader <var>id</var> has a result or was destroyed.
+         * Returns true if this is its first result, which is to be held for
+         * later delivery.
+         */
+        boolean memberFinished(int id) {
+            if (mFlushed) {
+                return false;
+            }
+            boolean first = false;
+            boolean all = true;
+            for (int i=0; i<mIds.length; i++) {
+                if (mIds[i] == id) {
+                    first = !mFinished[i];
+                    mFinished[i] = true;
+                }
+                all &= mFinished[i];
+            }
+            if (all) {
+                flush();
+            }
+            return first;
+        }
+
+        @Override
+        public void run() {
+            if (DEBUG) Log.v(TAG, "Loader group timed out: " + this);
+            flush();
+        }
+
+        void flush() {
+            if (mFlushed) {
+                return;
+            }
+            mFlushed = true;
+            mHandler.removeCallbacks(this);
+            if (DEBUG) Log.v(TAG, "Delivering loader group: " + this);
+            for (int i=0; i<mIds.length; i++) {
+                if (mGroups.get(mIds[i]) == this) {
+                    mGroups.remove(mIds[i]);
+                }
+            }
+            for (int i=0; i<mIds.length; i++) {
+                LoaderInfo info = mLoaders.get(mIds[i]);
+                if (info != null && info.mHeldResult) {
+                    info.mHeldResult = false;
+                    if (info.mStarted && info.mHaveData) {
+                        info.callOnLoadFinished(info.mLoader, info.mData);
+                    }
+                    info.destroyInactiveLoader();
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "LoaderGroup{" + Arrays.toString(mIds)
+                    + " finished=" + Arrays.toString(mFinished) + "}";
+        }
+    }
+
     final class LoaderInfo implements Loader.OnLoadCompleteListener<Object> {
         final int mId;
         final Bundle mArgs;
@@ -213,6 +336,15 @@ class LoaderManagerImpl extends LoaderManager {
         boolean mDestroyed;
         boolean mListenerRegistered;
 
+        // Key of this loader's results in the LoaderResultCache, if they
+        // are cached; and whether mData came from there and still needs to
+        // be reported once started.
+        String mCacheKey;
+        boolean mReportCachedResult;
+
+        // Set while the last result is held back for its loader group.
+        boolean mHeldResult;
+
         LoaderInfo mPendingLoader;
 
         public LoaderInfo(int id, Bundle args, LoaderManager.LoaderCallbacks<Object> callbacks) {
@@ -252,6 +384,12 @@ class LoaderManagerImpl extends LoaderManager {
                     mLoader.registerListener(mId, this);
                     mListenerRegistered = true;
                 }
+                if (mReportCachedResult) {
+                    mReportCachedResult = false;
+                    if (mHaveData && !mReportNextStart) {
+                        callOnLoadFinished(mLoader, mData);
+                    }
+                }
                 mLoader.startLoading();
             }
         }
@@ -376,11 +514,37 @@ class LoaderManagerImpl extends LoaderManager {
                 return;
             }
 
+            if (mCacheKey != null) {
+                LoaderResultCache.put(loader, mCacheKey, data);
+            }
+
             // Notify of the new data so the app can switch out the old data before
             // we try to destroy it.
             if (mData != data || !mHaveData) {
                 mData = data;
                 mHaveData = true;
+                LoaderGroup group = mGroups != null ? mGroups.get(mId) : null;
+                final boolean partial = loader instanceof ProgressiveLoader
+                        && ((ProgressiveLoader<Object>)loader).isPartialResult();
+                if (group != null && !partial) {
+                    if (mDeliveredData) {
+                        // Data the application already has, such as a
+                        // partial result, may have been released by now,
+                        // so this goes out right away; it still completes
+                        // this member of the group.
+                        group.memberFinished(mId);
+                    } else {
+                        // Hold the result until the rest of the group is
+                        // ready; the group may deliver it right away if it
+                        // is.  Anything but a first result goes out right
+                        // away.
+                        mHeldResult = true;
+                        if (group.memberFinished(mId)) {
+                            return;
+                        }
+                        mHeldResult = false;
+                    }
+                }
                 if (mStarted) {
                     callOnLoadFinished(loader, data);
                 }
@@ -388,6 +552,10 @@ class LoaderManagerImpl extends LoaderManager {
 
             //if (DEBUG) Log.v(TAG, "  onLoadFinished returned: " + this);
 
+            destroyInactiveLoader();
+        }
+
+        void destroyInactiveLoader() {
             // We have now given the application the new loader with its
             // loaded data, so it should have stopped using the previous
             // loader.  If there is a previous loader on the inactive list,
@@ -440,6 +608,11 @@ class LoaderManagerImpl extends LoaderManager {
             writer.print(prefix); writer.print("mLoader="); writer.println(mLoader);
             if (mLoader != null) {
                 mLoader.dump(prefix + "  ", fd, writer, args);
+                writer.print(prefix); writer.println("Stats:");
+                mLoader.getStats().dump(prefix + "  ", writer);
+            }
+            if (mCacheKey != null) {
+                writer.print(prefix); writer.print("mCacheKey="); writer.println(mCacheKey);
             }
             if (mHaveData || mDeliveredData) {
                 writer.print(prefix); writer.print("mHaveData="); writer.print(mHaveData);
@@ -474,9 +647,37 @@ class LoaderManagerImpl extends LoaderManager {
         LoaderInfo info = new LoaderInfo(id, args,  (LoaderManager.LoaderCallbacks<Object>)callback);
         Loader<Object> loader = callback.onCreateLoader(id, args);
         info.mLoader = (Loader<Object>)loader;
+        applyLoaderPriority(loader);
+        if (loader != null && loader.isResultCacheable() && LoaderResultCache.isEnabled()) {
+            info.mCacheKey = LoaderResultCache.keyFor(loader.getClass(), args);
+        }
         return info;
     }
 
+    /**
+     * Set the priority of our loaders' loads from the state of the
+     * activity or fragment we belong to.
+     */
+    void setLoaderPriority(int priority) {
+        if (mLoaderPriority != priority) {
+            if (DEBUG) Log.v(TAG, "Loader priority now " + priority + " in " + this);
+            mLoaderPriority = priority;
+            for (int i = mLoaders.size()-1; i >= 0; i--) {
+                LoaderInfo info = mLoaders.valueAt(i);
+                applyLoaderPriority(info.mLoader);
+                if (info.mPendingLoader != null) {
+                    applyLoaderPriority(info.mPendingLoader.mLoader);
+                }
+            }
+        }
+    }
+
+    private void applyLoaderPriority(Loader<?> loader) {
+        if (loader instanceof AsyncTaskLoader) {
+            ((AsyncTaskLoader<?>) loader).setHostPriority(mLoaderPriority);
+        }
+    }
+
     private LoaderInfo createAndInstallLoader(int id, Bundle args,
             LoaderManager.LoaderCallbacks<Object> callback) {
         try {
@@ -537,6 +738,17 @@ class LoaderManagerImpl extends LoaderManager {
             // Loader doesn't already exist; create.
             info = createAndInstallLoader(id, args,  (LoaderManager.LoaderCallbacks<Object>)callback);
             if (DEBUG) Log.v(TAG, "  Created new loader " + info);
+            if (!info.mHaveData && info.mCacheKey != null) {
+                // Show the result of an earlier equivalent loader while
+                // this one refreshes it.
+                Object cached = LoaderResultCache.get(info.mCacheKey);
+                if (cached != null) {
+                    if (DEBUG) Log.v(TAG, "  Using cached result: " + info.mCacheKey);
+                    info.mData = cached;
+                    info.mHaveData = true;
+                    info.mReportCachedResult = !mStarted;
+                }
+            }
         } else {
             if (DEBUG) Log.v(TAG, "  Re-using existing loader " + info);
             info.mCallbacks = (LoaderManager.LoaderCallbacks<Object>)callback;
@@ -651,6 +863,10 @@ class LoaderManagerImpl extends LoaderManager {
             mLoaders.removeAt(idx);
             info.destroy();
         }
+        LoaderGroup group = mGroups != null ? mGroups.get(id) : null;
+        if (group != null) {
+            group.memberFinished(id);
+        }
         idx = mInactiveLoaders.indexOfKey(id);
         if (idx >= 0) {
             LoaderInfo info = mInactiveLoaders.valueAt(idx);
@@ -679,6 +895,32 @@ class LoaderManagerImpl extends LoaderManager {
         return null;
     }
 
+    public void groupLoaders(long timeoutMillis, int... ids) {
+        if (mGroups == null) {
+            mGroups = new HCSparseArray<LoaderGroup>();
+            mHandler = new Handler();
+        }
+        // A loader is in at most one group; deliver what any older group
+        // has held so far.
+        for (int id : ids) {
+            LoaderGroup old = mGroups.get(id);
+            if (old != null) {
+                old.flush();
+            }
+        }
+        LoaderGroup group = new LoaderGroup(ids.clone());
+        if (DEBUG) Log.v(TAG, "groupLoaders in " + this + ": " + group);
+        for (int id : ids) {
+            mGroups.put(id, group);
+        }
+        mHandler.postDelayed(group, timeoutMillis);
+    }
+
+    public LoaderStats getLoaderStats(int id) {
+        Loader<Object> loader = getLoader(id);
+        return loader != null ? loader.getStats() : null;
+    }
+
     void doStart() {
         if (DEBUG) Log.v(TAG, "Starting in " + this);
         if (mStarted) {
@@ -764,6 +1006,13 @@ class LoaderManagerImpl extends LoaderManager {
             mInactiveLoaders.valueAt(i).destroy();
         }
         mInactiveLoaders.clear();
+
+        if (mGroups != null && !mRetaining) {
+            for (int i = mGroups.size()-1; i >= 0; i--) {
+                mHandler.removeCallbacks(mGroups.valueAt(i));
+            }
+            mGroups.clear();
+        }
     }
 
     @Override
@@ -799,5 +1048,15 @@ class LoaderManagerImpl extends LoaderManager {
                 li.dump(innerPrefix, fd, writer, args);
             }
         }
+        if (mLoaderPriority != ModernAsyncTask.PRIORITY_DEFAULT) {
+            writer.print(prefix); writer.print("mLoaderPriority="); writer.println(mLoaderPriority);
+        }
+        if (mGroups != null && mGroups.size() > 0) {
+            writer.print(prefix); writer.println("Loader Groups:");
+            for (int i=0; i < mGroups.size(); i++) {
+                writer.print(prefix); writer.print("  #"); writer.print(mGroups.keyAt(i));
+                        writer.print(": "); writer.println(mGroups.valueAt(i));
+            }
+        }
     }
 }
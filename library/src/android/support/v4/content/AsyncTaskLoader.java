@@ -19,12 +19,17 @@ package android.support.v4.content;
 import android.content.Context;
 import android.os.Handler;
 import android.os.SystemClock;
+import android.support.v4.os.CancellationSignal;
+import android.support.v4.os.OperationCanceledException;
 import android.support.v4.util.TimeUtils;
 import android.util.Log;
 
 import java.io.FileDescriptor;
 import java.io.PrintWriter;
-import java.util.concurrent.CountDownLatch;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * Static library support version of the framework's {@link android.content.AsyncTaskLoader}.
@@ -37,41 +42,71 @@ public abstract class AsyncTaskLoader<D> extends Loader<D> {
     static final String TAG = "AsyncTaskLoader";
     static final boolean DEBUG = false;
 
-    final class LoadTask extends ModernAsyncTask<Void, Void, D> implements Runnable {
+    final class LoadTask extends ModernAsyncTask<Void, Object, D> implements Runnable {
 
         D result;
         boolean waiting;
 
-        private CountDownLatch done = new CountDownLatch(1);
+        // Uptime at which the task was handed to its executor, and at which
+        // the load started and finished on the worker thread.
+        long queuedTime;
+        long startTime;
+        long finishTime;
+
+        // Key of the load, for sharing it with identical concurrent loads,
+        // and the content generation it must see.
+        Object loadKey;
+        int generation;
+
+        final CancellationSignal cancellation = new CancellationSignal();
 
         /* Runs on a worker thread */
         @Override
         protected D doInBackground(Void... params) {
             if (DEBUG) Log.v(TAG, this + " >>> doInBackground");
-            result = AsyncTaskLoader.this.onLoadInBackground();
+            startTime = uptimeMillis();
+            mRunningTask = this;
+            try {
+                result = AsyncTaskLoader.this.performLoad(this);
+            } catch (OperationCanceledException e) {
+                if (!isCancelled()) {
+                    // The load threw without having been cancelled by us;
+                    // treat it like any other failure.
+                    throw e;
+                }
+                if (DEBUG) Log.v(TAG, this + "  <<< doInBackground (cancelled)");
+                return null;
+            } finally {
+                mRunningTask = null;
+            }
+            finishTime = uptimeMillis();
             if (DEBUG) Log.v(TAG, this + "  <<< doInBackground");
             return result;
         }
 
+        /* Runs on a worker thread */
+        void publishPartialResult(Object data) {
+            publishProgress(data);
+        }
+
+        /* Runs on the UI thread */
+        @SuppressWarnings("unchecked")
+        @Override
+        protected void onProgressUpdate(Object... values) {
+            AsyncTaskLoader.this.dispatchOnPartialResult(this, (D) values[0]);
+        }
+
         /* Runs on the UI thread */
         @Override
         protected void onPostExecute(D data) {
             if (DEBUG) Log.v(TAG, this + " onPostExecute");
-            try {
-                AsyncTaskLoader.this.dispatchOnLoadComplete(this, data);
-            } finally {
-                done.countDown();
-            }
+            AsyncTaskLoader.this.dispatchOnLoadComplete(this, data);
         }
 
         @Override
         protected void onCancelled() {
             if (DEBUG) Log.v(TAG, this + " onCancelled");
-            try {
-                AsyncTaskLoader.this.dispatchOnCancelled(this, result);
-            } finally {
-                done.countDown();
-            }
+            AsyncTaskLoader.this.dispatchOnCancelled(this, result);
         }
 
         @Override
@@ -81,13 +116,108 @@ public abstract class AsyncTaskLoader<D> extends Loader<D> {
         }
     }
 
+    /**
+     * A load run once on behalf of all loaders that asked for a load with
+     * the same key while it was in flight.
+     */
+    static final class SharedLoad implements CancellationSignal.OnCancelListener {
+        final Object key;
+        final int generation;
+        final CancellationSignal cancellation = new CancellationSignal();
+
+        // Guarded by sSharedLoads.
+        int participants = 1;
+        int cancelled;
+
+        // Guarded by this.
+        boolean done;
+        List<?> results;
+        int nextResult = 1;
+        RuntimeException error;
+
+        SharedLoad(Object key, int generation) {
+            this.key = key;
+            this.generation = generation;
+        }
+
+        @Override
+        public void onCancel() {
+            synchronized (sSharedLoads) {
+                if (++cancelled < participants) {
+                    return;
+                }
+                // Nobody wants the result any more; don't let new loads
+                // join it.
+                if (sSharedLoads.get(key) == this) {
+                    sSharedLoads.remove(key);
+                }
+            }
+            cancellation.cancel();
+        }
+
+        synchronized void publish(List<?> results, RuntimeException error) {
+            this.results = results;
+            this.error = error;
+            done = true;
+            notifyAll();
+        }
+
+        synchronized Object await() {
+            boolean interrupted = false;
+            while (!done) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (error != null) {
+                throw error;
+            }
+            return results.get(nextResult++);
+        }
+    }
+
+    static final HashMap<Object, SharedLoad> sSharedLoads = new HashMap<Object, SharedLoad>();
+
+    // Bumped on every content change seen by any loader, so that a load
+    // started after a change never joins a shared load started before it.
+    // Only used on the main thread.
+    static int sContentGeneration;
+
+    // How long a low priority load waits before checking again whether
+    // the executor has a thread to spare.
+    static final long LOW_PRIORITY_DEFER_DELAY = 250;
+
     volatile LoadTask mTask;
+    // The task whose load is running; loads of one loader never overlap.
+    volatile LoadTask mRunningTask;
     volatile LoadTask mCancellingTask;
 
+    static LoaderScheduler sDefaultScheduler;
+
+    Executor mExecutor;
+    LoaderScheduler mScheduler = sDefaultScheduler;
+    int mPriority = ModernAsyncTask.PRIORITY_DEFAULT;
+    boolean mPrioritySet;
+    int mHostPriority = ModernAsyncTask.PRIORITY_DEFAULT;
+
     long mUpdateThrottle;
     long mLastLoadCompleteTime = -10000;
     Handler mHandler;
 
+    // Adaptive throttling: bounds of the throttle, and running averages of
+    // the load duration and of the interval between content changes.
+    boolean mAdaptiveThrottle;
+    long mMinUpdateThrottle;
+    long mMaxUpdateThrottle;
+    long mAverageLoadDuration;
+    long mAverageChangeInterval;
+    long mLastContentChangeTime;
+
     public AsyncTaskLoader(Context context) {
         super(context);
     }
@@ -100,10 +230,144 @@ public abstract class AsyncTaskLoader<D> extends Loader<D> {
      * @param delayMS Amount of delay, in milliseconds.
      */
     public void setUpdateThrottle(long delayMS) {
+        mAdaptiveThrottle = false;
         mUpdateThrottle = delayMS;
-        if (delayMS != 0) {
-            mHandler = new Handler();
+    }
+
+    /**
+     * Throttle updates by an amount that adapts to the load.  After each
+     * load the throttle is set to the average duration of
+     * {@link #loadInBackground()}, so that loading takes at most about half
+     * the time, and scaled up further when content changes are reported
+     * faster than loads complete.  Fast loads of rarely changing content are
+     * thus hardly throttled, while slow loads under heavy churn are not run
+     * back to back.
+     *
+     * <p>Calling {@link #setUpdateThrottle(long)} switches back to a fixed
+     * throttle.
+     *
+     * @param minDelayMS Smallest throttle to use, in milliseconds.
+     * @param maxDelayMS Largest throttle to use, in milliseconds.
+     */
+    public void setAdaptiveUpdateThrottle(long minDelayMS, long maxDelayMS) {
+        if (maxDelayMS < minDelayMS) {
+            throw new IllegalArgumentException("maxDelayMS < minDelayMS");
         }
+        mAdaptiveThrottle = true;
+        mMinUpdateThrottle = minDelayMS;
+        mMaxUpdateThrottle = maxDelayMS;
+        mUpdateThrottle = minDelayMS;
+    }
+
+    @Override
+    public void onContentChanged() {
+        sContentGeneration++;
+        if (mAdaptiveThrottle) {
+            final long now = uptimeMillis();
+            if (mLastContentChangeTime > 0) {
+                mAverageChangeInterval = average(mAverageChangeInterval,
+                        now - mLastContentChangeTime);
+            }
+            mLastContentChangeTime = now;
+        }
+        super.onContentChanged();
+    }
+
+    private static long average(long average, long sample) {
+        return average == 0 ? sample : (average * 3 + sample) / 4;
+    }
+
+    void updateAdaptiveThrottle(long loadDuration) {
+        mAverageLoadDuration = average(mAverageLoadDuration, loadDuration);
+        long throttle = mAverageLoadDuration;
+        if (mLastContentChangeTime > 0) {
+            // A quiet spell since the last change also counts as a long
+            // interval, so that the throttle relaxes once churn stops.
+            final long interval = Math.max(mAverageChangeInterval,
+                    uptimeMillis() - mLastContentChangeTime);
+            if (interval > 0 && interval < mAverageLoadDuration) {
+                throttle = mAverageLoadDuration * mAverageLoadDuration / interval;
+            }
+        }
+        mUpdateThrottle = Math.max(mMinUpdateThrottle, Math.min(mMaxUpdateThrottle, throttle));
+        if (DEBUG) Log.v(TAG, "Adaptive throttle now " + mUpdateThrottle + "ms");
+    }
+
+    /**
+     * Set the executor that loads are run on.  By default this is the
+     * default executor of {@link ModernAsyncTask}, which is
+     * {@link ModernAsyncTask#PRIORITY_EXECUTOR} unless changed.
+     *
+     * @param executor The executor, or null for the default.
+     */
+    public void setExecutor(Executor executor) {
+        mExecutor = executor;
+    }
+
+    /**
+     * Set the scheduler that runs this loader's loads and delivers their
+     * results, in place of the executor and the main thread's looper.  Must
+     * not be changed while a load is in progress.
+     *
+     * @param scheduler The scheduler, or null for the default behavior.
+     */
+    public void setScheduler(LoaderScheduler scheduler) {
+        mScheduler = scheduler;
+    }
+
+    /**
+     * Set the scheduler of loaders created from now on, as with
+     * {@link #setScheduler}.  Meant for tests and benchmarks that need
+     * loaders created by a {@link android.support.v4.app.LoaderManager} to
+     * run deterministically.
+     *
+     * @param scheduler The scheduler, or null for the default behavior.
+     */
+    public static void setDefaultScheduler(LoaderScheduler scheduler) {
+        sDefaultScheduler = scheduler;
+    }
+
+    /**
+     * Set the priority of this loader's loads relative to other work on a
+     * priority executor, such as {@link ModernAsyncTask#PRIORITY_HIGH} for a
+     * loader backing a visible fragment or
+     * {@link ModernAsyncTask#PRIORITY_PREFETCH} for speculative loads.
+     * Takes effect from the next load that is started, and overrides the
+     * priority given by the loader's host with {@link #setHostPriority}.
+     */
+    public void setPriority(int priority) {
+        mPriority = priority;
+        mPrioritySet = true;
+    }
+
+    /**
+     * Set the priority the loader gets from the state of its host, such as
+     * {@link ModernAsyncTask#PRIORITY_HIGH} while the fragment that owns it
+     * is resumed and visible.  Called by the loader manager; it applies
+     * unless a priority has been set with {@link #setPriority}.  A load
+     * that is still queued is moved to its new place in the queue.  Loads
+     * with a priority below {@link ModernAsyncTask#PRIORITY_DEFAULT} are
+     * held back while the priority executor has no idle thread.
+     *
+     * @hide
+     */
+    public void setHostPriority(int priority) {
+        if (mHostPriority != priority) {
+            mHostPriority = priority;
+            if (!mPrioritySet) {
+                LoadTask task = mTask;
+                if (task != null && !task.waiting) {
+                    task.updatePriority(priority);
+                } else if (task != null && priority >= ModernAsyncTask.PRIORITY_DEFAULT) {
+                    // No longer held back for being low priority.
+                    executePendingTask();
+                }
+            }
+        }
+    }
+
+    public int getPriority() {
+        return mPrioritySet ? mPriority : mHostPriority;
     }
 
     @Override
@@ -115,6 +379,11 @@ public abstract class AsyncTaskLoader<D> extends Loader<D> {
         executePendingTask();
     }
 
+    @Override
+    boolean isLoading() {
+        return mTask != null && !mTask.waiting;
+    }
+
     /**
      * Attempt to cancel the current load task. See {@link AsyncTask#cancel(boolean)}
      * for more info.  Must be called on the main thread of the process.
@@ -141,23 +410,27 @@ public abstract class AsyncTaskLoader<D> extends Loader<D> {
                         "cancelLoad: still waiting for cancelled task; dropping next");
                 if (mTask.waiting) {
                     mTask.waiting = false;
-                    mHandler.removeCallbacks(mTask);
+                    removeCallbacks(mTask);
                 }
                 mTask = null;
+                mStats.cancelCount++;
                 return false;
             } else if (mTask.waiting) {
                 // There is a task, but it is waiting for the time it should
                 // execute.  We can just toss it.
                 if (DEBUG) Log.v(TAG, "cancelLoad: task is waiting, dropping it");
                 mTask.waiting = false;
-                mHandler.removeCallbacks(mTask);
+                removeCallbacks(mTask);
                 mTask = null;
+                mStats.cancelCount++;
                 return false;
             } else {
                 boolean cancelled = mTask.cancel(false);
                 if (DEBUG) Log.v(TAG, "cancelLoad: cancelled=" + cancelled);
                 if (cancelled) {
+                    mTask.cancellation.cancel();
                     mCancellingTask = mTask;
+                    mStats.cancelCount++;
                 }
                 mTask = null;
                 return cancelled;
@@ -177,35 +450,90 @@ public abstract class AsyncTaskLoader<D> extends Loader<D> {
         if (mCancellingTask == null && mTask != null) {
             if (mTask.waiting) {
                 mTask.waiting = false;
-                mHandler.removeCallbacks(mTask);
+                removeCallbacks(mTask);
             }
             if (mUpdateThrottle > 0) {
-                long now = SystemClock.uptimeMillis();
+                long now = uptimeMillis();
                 if (now < (mLastLoadCompleteTime+mUpdateThrottle)) {
                     // Not yet time to do another load.
                     if (DEBUG) Log.v(TAG, "Waiting until "
                             + (mLastLoadCompleteTime+mUpdateThrottle)
                             + " to execute: " + mTask);
                     mTask.waiting = true;
-                    mHandler.postAtTime(mTask, mLastLoadCompleteTime+mUpdateThrottle);
+                    postDelayed(mTask, mLastLoadCompleteTime+mUpdateThrottle - now);
                     return;
                 }
             }
+            final int priority = getPriority();
+            if (priority < ModernAsyncTask.PRIORITY_DEFAULT
+                    && ModernAsyncTask.isBusy(getLoadExecutor())) {
+                // Leave the threads to more important work for now.
+                if (DEBUG) Log.v(TAG, "Deferring low priority task: " + mTask);
+                mTask.waiting = true;
+                postDelayed(mTask, LOW_PRIORITY_DEFER_DELAY);
+                return;
+            }
             if (DEBUG) Log.v(TAG, "Executing: " + mTask);
-            mTask.executeOnExecutor(ModernAsyncTask.THREAD_POOL_EXECUTOR, (Void[]) null);
+            mTask.setPriority(priority);
+            mTask.loadKey = getLoadKey();
+            mTask.generation = sContentGeneration;
+            mTask.queuedTime = uptimeMillis();
+            final Executor executor = getLoadExecutor();
+            if (mScheduler != null) {
+                mTask.setDeliveryExecutor(mScheduler.getDeliveryExecutor());
+            }
+            if (executor != null) {
+                mTask.executeOnExecutor(executor, (Void[]) null);
+            } else {
+                mTask.execute((Void[]) null);
+            }
+        }
+    }
+
+    private Executor getLoadExecutor() {
+        return mScheduler != null ? mScheduler.getLoadExecutor() : mExecutor;
+    }
+
+    private void postDelayed(Runnable runnable, long delayMillis) {
+        if (mScheduler != null) {
+            mScheduler.postDelayed(runnable, delayMillis);
+        } else {
+            if (mHandler == null) {
+                mHandler = new Handler();
+            }
+            mHandler.postDelayed(runnable, delayMillis);
+        }
+    }
+
+    private long uptimeMillis() {
+        return mScheduler != null ? mScheduler.uptimeMillis() : SystemClock.uptimeMillis();
+    }
+
+    private void removeCallbacks(Runnable runnable) {
+        if (mScheduler != null) {
+            mScheduler.removeCallbacks(runnable);
+        } else if (mHandler != null) {
+            mHandler.removeCallbacks(runnable);
         }
     }
 
     void dispatchOnCancelled(LoadTask task, D data) {
+        if (task.finishTime != 0) {
+            // The load ran to completion, only to be thrown away.
+            mStats.discardCount++;
+        }
         onCanceled(data);
         if (mCancellingTask == task) {
             if (DEBUG) Log.v(TAG, "Cancelled task is now canceled!");
-            mLastLoadCompleteTime = SystemClock.uptimeMillis();
+            mLastLoadCompleteTime = uptimeMillis();
             mCancellingTask = null;
             executePendingTask();
         }
     }
 
+    void dispatchOnPartialResult(LoadTask task, D data) {
+    }
+
     void dispatchOnLoadComplete(LoadTask task, D data) {
         if (mTask != task) {
             if (DEBUG) Log.v(TAG, "Load complete of old task, trying to cancel");
@@ -213,9 +541,16 @@ public abstract class AsyncTaskLoader<D> extends Loader<D> {
         } else {
             if (isAbandoned()) {
                 // This cursor has been abandoned; just cancel the new data.
+                mStats.discardCount++;
                 onCanceled(data);
             } else {
-                mLastLoadCompleteTime = SystemClock.uptimeMillis();
+                mLastLoadCompleteTime = uptimeMillis();
+                final long loadTime = task.finishTime - task.startTime;
+                mStats.noteLoad(task.startTime - task.queuedTime, loadTime,
+                        mLastLoadCompleteTime - task.finishTime);
+                if (mAdaptiveThrottle) {
+                    updateAdaptiveThrottle(loadTime);
+                }
                 mTask = null;
                 if (DEBUG) Log.v(TAG, "Delivering result");
                 deliverResult(data);
@@ -227,6 +562,112 @@ public abstract class AsyncTaskLoader<D> extends Loader<D> {
      */
     public abstract D loadInBackground();
 
+    /**
+     * Called on a worker thread to perform the load, with a signal that is
+     * cancelled when {@link #cancelLoad()} cancels this load.  Long running
+     * loads should poll it, or call
+     * {@link CancellationSignal#throwIfCanceled()}, to stop early; the
+     * resulting {@link OperationCanceledException} is handled as a
+     * cancellation.  The default implementation ignores the signal and calls
+     * {@link #onLoadInBackground()}.
+     *
+     * @param signal The signal for this load.
+     */
+    public D loadInBackground(CancellationSignal signal) {
+        return onLoadInBackground();
+    }
+
+    /**
+     * Return a key identifying the load this loader would perform now, or
+     * null (the default) if its loads are never shared.  While a load with
+     * a given key is running, other loads with an equal key, of this or any
+     * other loader, do not run {@link #loadInBackground} themselves but
+     * wait for the running load and receive a share of its result (see
+     * {@link #shareResult}).  The key must implement equals() and hashCode(),
+     * and should include the loader class and every parameter of the load.
+     * Called on the main thread.
+     */
+    protected Object getLoadKey() {
+        return null;
+    }
+
+    /**
+     * Called on a worker thread after a load that <var>count</var> loaders
+     * asked for, to turn its result into one result per loader.  Each
+     * loader will release its result on its own, so for results that need
+     * releasing each must be an independent, reference-counted handle.
+     * The first element goes to this loader.  The default implementation
+     * returns the same object for every loader, which is only suitable for
+     * results that are immutable and need no releasing.
+     */
+    protected List<D> shareResult(D result, int count) {
+        return Collections.nCopies(count, result);
+    }
+
+    /**
+     * Called on a worker thread with this loader's share of a load run by
+     * another loader with the same {@link #getLoadKey() key}, in place of
+     * running {@link #loadInBackground}.  The default implementation does
+     * nothing.
+     */
+    protected void onSharedResult(D result) {
+    }
+
+    @SuppressWarnings("unchecked")
+    D performLoad(LoadTask task) {
+        final Object key = task.loadKey;
+        if (key == null) {
+            return loadInBackground(task.cancellation);
+        }
+
+        SharedLoad shared;
+        boolean owner = false;
+        synchronized (sSharedLoads) {
+            shared = sSharedLoads.get(key);
+            if (shared == null || shared.generation < task.generation) {
+                // A shared load started before the last content change may
+                // return stale data; start a fresh one in its place.
+                shared = new SharedLoad(key, task.generation);
+                sSharedLoads.put(key, shared);
+                owner = true;
+            } else {
+                shared.participants++;
+            }
+        }
+        task.cancellation.setOnCancelListener(shared);
+
+        if (!owner) {
+            if (DEBUG) Log.v(TAG, this + " sharing load " + key);
+            D result = (D) shared.await();
+            onSharedResult(result);
+            return result;
+        }
+
+        D result = null;
+        RuntimeException error = null;
+        try {
+            result = loadInBackground(shared.cancellation);
+        } catch (RuntimeException e) {
+            error = e;
+        }
+        final int count;
+        synchronized (sSharedLoads) {
+            if (sSharedLoads.get(key) == shared) {
+                sSharedLoads.remove(key);
+            }
+            count = shared.participants;
+        }
+        List<D> results = null;
+        if (error == null) {
+            results = count > 1 ? shareResult(result, count) : Collections.singletonList(result);
+        }
+        shared.publish(results, error);
+        if (error != null) {
+            throw error;
+        }
+        return results.get(0);
+    }
+
     /**
      * Called on a worker thread to perform the actual load. Implementations should not deliver the
      * result directly, but should return them from this method, which will eventually end up
@@ -247,14 +688,21 @@ public abstract class AsyncTaskLoader<D> extends Loader<D> {
      * thread would cause a deadlock.
      * <p>
      * Use for testing only.  <b>Never</b> call this from a UI thread.
+     * With a {@link SynchronousLoaderScheduler} it instead runs the pending
+     * deliveries on the calling thread.
      *
      * @hide
      */
     public void waitForLoader() {
+        if (mScheduler instanceof SynchronousLoaderScheduler) {
+            // The load runs on this very thread; just deliver it.
+            ((SynchronousLoaderScheduler) mScheduler).runPending();
+            return;
+        }
         LoadTask task = mTask;
         if (task != null) {
             try {
-                task.done.await();
+                task.waitForFinish();
             } catch (InterruptedException e) {
                 // Ignore
             }
@@ -272,12 +720,29 @@ public abstract class AsyncTaskLoader<D> extends Loader<D> {
             writer.print(prefix); writer.print("mCancellingTask="); writer.print(mCancellingTask);
                     writer.print(" waiting="); writer.println(mCancellingTask.waiting);
         }
+        if (mExecutor != null || mScheduler != null
+                || getPriority() != ModernAsyncTask.PRIORITY_DEFAULT) {
+            writer.print(prefix); writer.print("mExecutor="); writer.print(mExecutor);
+                    writer.print(" mScheduler="); writer.print(mScheduler);
+                    writer.print(" priority="); writer.println(getPriority());
+        }
         if (mUpdateThrottle != 0) {
             writer.print(prefix); writer.print("mUpdateThrottle=");
                     TimeUtils.formatDuration(mUpdateThrottle, writer);
                     writer.print(" mLastLoadCompleteTime=");
                     TimeUtils.formatDuration(mLastLoadCompleteTime,
-                            SystemClock.uptimeMillis(), writer);
+                            uptimeMillis(), writer);
+                    writer.println();
+        }
+        if (mAdaptiveThrottle) {
+            writer.print(prefix); writer.print("mAdaptiveThrottle=");
+                    TimeUtils.formatDuration(mMinUpdateThrottle, writer);
+                    writer.print("..");
+                    TimeUtils.formatDuration(mMaxUpdateThrottle, writer);
+                    writer.print(" mAverageLoadDuration=");
+                    TimeUtils.formatDuration(mAverageLoadDuration, writer);
+                    writer.print(" mAverageChangeInterval=");
+                    TimeUtils.formatDuration(mAverageChangeInterval, writer);
                     writer.println();
         }
     }
@@ -19,11 +19,14 @@ package android.support.v4.content;
 import android.content.Context;
 import android.database.ContentObserver;
 import android.database.Cursor;
+import android.database.MergeCursor;
 import android.net.Uri;
+import android.support.v4.os.CancellationSignal;
 
 import java.io.FileDescriptor;
 import java.io.PrintWriter;
 import java.util.Arrays;
+import java.util.List;
 
 /**
  * Static library support version of the framework's {@link android.content.CursorLoader}.
@@ -43,19 +46,145 @@ public class CursorLoader extends AsyncTaskLoader<Cursor> {
 
     Cursor mCursor;
 
+    // Paged mode: rows added per page, the number of rows currently
+    // requested, and whether the last result was cut off at that limit.
+    int mPageSize;
+    int mRowLimit;
+    boolean mHasMoreRows;
+    boolean mLoadingMoreRows;
+    // While loading the next page: the result it extends, and the number
+    // of rows in that result.
+    Cursor mAppendTo;
+    int mAppendOffset;
+
+    /**
+     * Result of loading a page after the first: the pages loaded so far,
+     * merged in order.  It takes over the pages of the result it extends,
+     * so that result must be dropped without being closed.
+     */
+    static final class PagedCursor extends MergeCursor {
+        final Cursor mBase;
+        final Cursor[] mPages;
+
+        static PagedCursor append(Cursor base, Cursor page) {
+            Cursor[] pages;
+            if (base instanceof PagedCursor) {
+                Cursor[] basePages = ((PagedCursor)base).mPages;
+                pages = new Cursor[basePages.length+1];
+                System.arraycopy(basePages, 0, pages, 0, basePages.length);
+            } else {
+                pages = new Cursor[2];
+                pages[0] = base;
+            }
+            pages[pages.length-1] = page;
+            return new PagedCursor(base, pages);
+        }
+
+        private PagedCursor(Cursor base, Cursor[] pages) {
+            super(pages);
+            mBase = base;
+            mPages = pages;
+        }
+
+        /**
+         * Close only the page this result added, leaving those it shares
+         * with the result it extends.
+         */
+        void closeLastPage() {
+            mPages[mPages.length-1].close();
+        }
+    }
+
+    // Signal of the load running on the worker thread, if any.
+    volatile CancellationSignal mCancellationSignal;
+
     /* Runs on a worker thread */
     @Override
     public Cursor loadInBackground() {
+        return query(mCancellationSignal);
+    }
+
+    /* Runs on a worker thread */
+    @Override
+    public Cursor loadInBackground(CancellationSignal signal) {
+        // Go through loadInBackground(), so that subclasses overriding it
+        // still see every load; it picks the signal up from here.
+        mCancellationSignal = signal;
+        try {
+            return super.loadInBackground(signal);
+        } finally {
+            mCancellationSignal = null;
+        }
+    }
+
+    /* Runs on a worker thread */
+    Cursor query(CancellationSignal signal) {
+        if (signal != null) {
+            signal.throwIfCanceled();
+        }
+        final Cursor appendTo = mAppendTo;
+        String sortOrder = mSortOrder;
+        if (appendTo != null) {
+            sortOrder += " LIMIT " + mPageSize + " OFFSET " + mAppendOffset;
+        } else if (mRowLimit > 0) {
+            sortOrder += " LIMIT " + mRowLimit;
+        }
         Cursor cursor = getContext().getContentResolver().query(mUri, mProjection, mSelection,
-                mSelectionArgs, mSortOrder);
+                mSelectionArgs, sortOrder);
         if (cursor != null) {
+            if (signal != null && signal.isCanceled()) {
+                // Don't spend time filling a window nobody will look at.
+                cursor.close();
+                signal.throwIfCanceled();
+            }
             // Ensure the cursor window is filled
             cursor.getCount();
             registerContentObserver(cursor, mObserver);
+            if (appendTo != null) {
+                cursor = PagedCursor.append(appendTo, cursor);
+            }
         }
         return cursor;
     }
 
+    /**
+     * Identical queries that run at the same time, from this or another
+     * CursorLoader, are only sent to the provider once.
+     */
+    @Override
+    protected Object getLoadKey() {
+        if (mAppendTo != null) {
+            // Only this loader has the rows the page is added to.
+            return null;
+        }
+        return Arrays.asList(getClass(), mUri,
+                mProjection != null ? Arrays.asList(mProjection) : null, mSelection,
+                mSelectionArgs != null ? Arrays.asList(mSelectionArgs) : null, mSortOrder,
+                mRowLimit);
+    }
+
+    /* Runs on a worker thread */
+    @Override
+    protected List<Cursor> shareResult(Cursor cursor, int count) {
+        if (cursor == null) {
+            return super.shareResult(cursor, count);
+        }
+        // Observe through our own reference, so that closing it stops
+        // the notifications.
+        cursor.unregisterContentObserver(mObserver);
+        List<Cursor> cursors = SharedCursor.share(cursor, count);
+        registerContentObserver(cursors.get(0), mObserver);
+        return cursors;
+    }
+
+    /* Runs on a worker thread */
+    @Override
+    protected void onSharedResult(Cursor cursor) {
+        if (cursor != null) {
+            registerContentObserver(cursor, mObserver);
+        }
+    }
+
     /**
      * Registers an observer to get notifications from the content provider
      * when the cursor needs to be refreshed.
@@ -76,12 +205,16 @@ public class CursorLoader extends AsyncTaskLoader<Cursor> {
         }
         Cursor oldCursor = mCursor;
         mCursor = cursor;
+        mLoadingMoreRows = false;
+        mAppendTo = null;
+        mHasMoreRows = mRowLimit > 0 && cursor != null && cursor.getCount() >= mRowLimit;
 
         if (isStarted()) {
             super.deliverResult(cursor);
         }
 
-        if (oldCursor != null && oldCursor != cursor && !oldCursor.isClosed()) {
+        if (oldCursor != null && oldCursor != cursor && !oldCursor.isClosed()
+                && !(cursor instanceof PagedCursor && ((PagedCursor)cursor).mBase == oldCursor)) {
             oldCursor.close();
         }
     }
@@ -125,11 +258,24 @@ public class CursorLoader extends AsyncTaskLoader<Cursor> {
         if (mCursor != null) {
             deliverResult(mCursor);
         }
-        if (takeContentChanged() || mCursor == null) {
+        if (takeContentChanged()) {
+            // Reload every row requested so far in one query.
+            mAppendTo = null;
+            forceLoad();
+        } else if (mCursor == null || mLoadingMoreRows) {
+            // Also finish a page load that was cancelled by stopping.
             forceLoad();
         }
     }
 
+    @Override
+    public void onContentChanged() {
+        // The loaded rows are stale, so a pending page can not be added to
+        // them.
+        mAppendTo = null;
+        super.onContentChanged();
+    }
+
     /**
      * Must be called from the UI thread
      */
@@ -141,7 +287,9 @@ public class CursorLoader extends AsyncTaskLoader<Cursor> {
 
     @Override
     public void onCanceled(Cursor cursor) {
-        if (cursor != null && !cursor.isClosed()) {
+        if (cursor instanceof PagedCursor) {
+            ((PagedCursor)cursor).closeLastPage();
+        } else if (cursor != null && !cursor.isClosed()) {
             cursor.close();
         }
     }
@@ -157,6 +305,82 @@ public class CursorLoader extends AsyncTaskLoader<Cursor> {
             mCursor.close();
         }
         mCursor = null;
+        mAppendTo = null;
+    }
+
+    /**
+     * Load the result a page at a time.  The first load only fetches
+     * <var>pageSize</var> rows, so it can be delivered without scanning the
+     * whole table; {@link #loadMoreRows()} then queries just the next page
+     * and delivers it merged after the rows already loaded.  Every result
+     * holds all rows loaded so far, in the same order, so a
+     * {@link android.support.v4.widget.CursorAdapter} keeps its scroll
+     * position when swapping to it.  See
+     * {@link android.support.v4.widget.CursorAdapter#setPagedLoader}.
+     * A result extended by the next page shares its rows with it, so swap
+     * results with {@link android.support.v4.widget.CursorAdapter#swapCursor}
+     * and leave closing them to the loader.
+     *
+     * <p>The page bounds are appended to the sort order as SQL LIMIT and
+     * OFFSET clauses, so this requires a provider backed by SQLite, and a
+     * sort order that gives every row a stable position.
+     *
+     * @param pageSize The number of rows per page, or 0 to load all rows at
+     * once (the default).
+     * @throws IllegalStateException if paging is enabled while no sort
+     * order is set.
+     */
+    public void setPageSize(int pageSize) {
+        if (pageSize > 0 && mSortOrder == null) {
+            throw new IllegalStateException("Paged loading requires a sort order");
+        }
+        mPageSize = pageSize;
+        mRowLimit = pageSize;
+        mHasMoreRows = false;
+        mLoadingMoreRows = false;
+        mAppendTo = null;
+    }
+
+    public int getPageSize() {
+        return mPageSize;
+    }
+
+    /**
+     * Return true if in paged mode and the last result was cut off at the
+     * current page limit.
+     */
+    public boolean hasMoreRows() {
+        return mHasMoreRows;
+    }
+
+    /**
+     * Load the next page of rows, unless the last result already holds
+     * every row or a page is already loading.  Must be called from the UI
+     * thread.
+     *
+     * @return True if a load was started.
+     */
+    public boolean loadMoreRows() {
+        if (!mHasMoreRows || mLoadingMoreRows) {
+            return false;
+        }
+        mLoadingMoreRows = true;
+        mAppendTo = mCursor;
+        mAppendOffset = mRowLimit;
+        mRowLimit += mPageSize;
+        forceLoad();
+        return true;
+    }
+
+    /**
+     * Note that the row at <var>position</var> is being shown, and load the
+     * next page if it is within half a page of the end of the loaded rows.
+     * Must be called from the UI thread.
+     */
+    public void onRowShown(int position) {
+        if (mHasMoreRows && position >= mRowLimit - mPageSize / 2) {
+            loadMoreRows();
+        }
     }
 
     public Uri getUri() {
@@ -195,7 +419,14 @@ public class CursorLoader extends AsyncTaskLoader<Cursor> {
         return mSortOrder;
     }
 
+    /**
+     * @throws IllegalStateException if the sort order is cleared while in
+     * paged mode.
+     */
     public void setSortOrder(String sortOrder) {
+        if (sortOrder == null && mPageSize > 0) {
+            throw new IllegalStateException("Paged loading requires a sort order");
+        }
         mSortOrder = sortOrder;
     }
 
@@ -210,6 +441,12 @@ public class CursorLoader extends AsyncTaskLoader<Cursor> {
                 writer.println(Arrays.toString(mSelectionArgs));
         writer.print(prefix); writer.print("mSortOrder="); writer.println(mSortOrder);
         writer.print(prefix); writer.print("mCursor="); writer.println(mCursor);
+        if (mPageSize > 0) {
+            writer.print(prefix); writer.print("mPageSize="); writer.print(mPageSize);
+                    writer.print(" mRowLimit="); writer.print(mRowLimit);
+                    writer.print(" mHasMoreRows="); writer.print(mHasMoreRows);
+                    writer.print(" mLoadingMoreRows="); writer.println(mLoadingMoreRows);
+        }
         writer.print(prefix); writer.print("mContentChanged="); writer.println(mContentChanged);
     }
 }
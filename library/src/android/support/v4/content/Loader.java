@@ -39,10 +39,47 @@ public class Loader<D> {
     boolean mAbandoned = false;
     boolean mReset = true;
     boolean mContentChanged = false;
+    String mResultCacheKey;
+    final LoaderStats mStats = new LoaderStats();
+    long mContentChangeWindow;
+    // Number of content change notifications received so far, and its
+    // value when the last load was started.
+    int mContentChangeCount;
+    int mLoadStartChangeCount;
 
+    /**
+     * Observer that reloads the loader when its content changes.  Bursts of
+     * notifications, such as from a bulk insert, are collapsed into a
+     * single {@link #onContentChanged()} once no more arrive within the
+     * loader's {@link #setContentChangeWindow content change window}, and
+     * dropped altogether if a load started since the last of them is still
+     * running, since that load will see all of the changes.
+     */
     public final class ForceLoadContentObserver extends ContentObserver {
+        private final Handler mHandler;
+        private int mPendingChanges;
+
+        private final Runnable mDispatchChange = new Runnable() {
+            @Override
+            public void run() {
+                final int changes = mPendingChanges;
+                mPendingChanges = 0;
+                if (isLoading() && mLoadStartChangeCount >= mContentChangeCount) {
+                    // The running load started after these changes.
+                    return;
+                }
+                mStats.noteReloadNotifications(changes);
+                onContentChanged();
+            }
+        };
+
         public ForceLoadContentObserver() {
-            super(new Handler());
+            this(new Handler());
+        }
+
+        private ForceLoadContentObserver(Handler handler) {
+            super(handler);
+            mHandler = handler;
         }
 
         @Override
@@ -52,7 +89,10 @@ public class Loader<D> {
 
         @Override
         public void onChange(boolean selfChange) {
-            onContentChanged();
+            mContentChangeCount++;
+            mPendingChanges++;
+            mHandler.removeCallbacks(mDispatchChange);
+            mHandler.postDelayed(mDispatchChange, mContentChangeWindow);
         }
     }
 
@@ -199,9 +239,30 @@ public class Loader<D> {
      * <p>Must be called from the process's main thread.
      */
     public void forceLoad() {
+        mLoadStartChangeCount = mContentChangeCount;
         onForceLoad();
     }
 
+    /**
+     * Return true if a load is currently running.  Used to drop content
+     * change notifications that a running load already covers.
+     */
+    boolean isLoading() {
+        return false;
+    }
+
+    /**
+     * Set how long {@link ForceLoadContentObserver} waits for further
+     * notifications before reporting a content change, so that a burst of
+     * notifications results in a single reload.  With the default of 0,
+     * only notifications that are already queued are collapsed.
+     *
+     * @param windowMS The window in milliseconds.
+     */
+    public void setContentChangeWindow(long windowMS) {
+        mContentChangeWindow = windowMS;
+    }
+
     /**
      * Subclasses must implement this to take care of requests to {@link #forceLoad()}.
      * This will always be called from the process's main thread.
@@ -303,12 +364,15 @@ public class Loader<D> {
      * Called when {@link ForceLoadContentObserver} detects a change.  The
      * default implementation checks to see if the loader is currently started;
      * if so, it simply calls {@link #forceLoad()}; otherwise, it sets a flag
-     * so that {@link #takeContentChanged()} returns true.
+     * so that {@link #takeContentChanged()} returns true.  Either way any
+     * result of this loader in the {@link LoaderResultCache} is dropped.
      *
      * <p>Must be called from the process's main thread.
      */
     public void onContentChanged() {
+        LoaderResultCache.invalidate(this);
         if (mStarted) {
+            mStats.contentChangeCount++;
             forceLoad();
         } else {
             // This loader has been stopped, so we don't want to load
@@ -318,6 +382,26 @@ public class Loader<D> {
         }
     }
 
+    /**
+     * Return a snapshot of this loader's performance counters.  Must be
+     * called from the process's main thread.
+     */
+    public LoaderStats getStats() {
+        return new LoaderStats(mStats);
+    }
+
+    /**
+     * Return true if the results of this loader can be kept in the
+     * {@link LoaderResultCache} and delivered to other loaders of the same
+     * class and arguments.  This requires results that are not modified
+     * after delivery and that do not need to be released, so a
+     * {@link android.database.Cursor} is not suitable.  The default
+     * implementation returns false.
+     */
+    public boolean isResultCacheable() {
+        return false;
+    }
+
     /**
      * For debugging, converts an instance of the Loader's data class to
      * a string that can be printed.  Must handle a null data.
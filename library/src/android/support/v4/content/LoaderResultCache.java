@@ -0,0 +1,133 @@
+/*
+ * Copyright 2012 Jake Wharton
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.content;
+
+import android.os.Bundle;
+import android.support.v4.util.LruCache;
+
+import java.util.Arrays;
+import java.util.TreeSet;
+
+/**
+ * Process-wide cache of the last result of loaders, keyed by loader class
+ * and arguments.  When enabled, {@link android.support.v4.app.LoaderManager#initLoader}
+ * delivers the cached result of an equivalent loader immediately when it
+ * creates a loader, and the new loader then refreshes it in the background.
+ * This lets an activity that is returned to show its data without waiting
+ * on a reload.
+ *
+ * <p>Only loaders that return true from {@link Loader#isResultCacheable()}
+ * take part, since the same result object may be delivered to many loaders
+ * in different activities.  A loader's entry is dropped when it sees its
+ * content change.
+ *
+ * <p>The cache is disabled until {@link #setMaxSize(int)} is called.  All
+ * methods are thread-safe.
+ */
+public final class LoaderResultCache {
+    private static LruCache<String, Object> sCache;
+
+    private LoaderResultCache() {
+    }
+
+    /**
+     * Enable the cache, holding at most <var>maxSize</var> results and
+     * evicting the least recently used ones beyond that.  Any cached results
+     * are discarded.
+     *
+     * @param maxSize The maximum number of results, or 0 to disable the cache.
+     */
+    public static synchronized void setMaxSize(int maxSize) {
+        sCache = maxSize > 0 ? new LruCache<String, Object>(maxSize) : null;
+    }
+
+    public static synchronized boolean isEnabled() {
+        return sCache != null;
+    }
+
+    /**
+     * Build the cache key of a loader of the given class created with the
+     * given arguments.  Argument values are compared by their string form.
+     */
+    public static String keyFor(Class<?> loaderClass, Bundle args) {
+        StringBuilder sb = new StringBuilder(64);
+        sb.append(loaderClass.getName());
+        if (args != null) {
+            sb.append('{');
+            for (String key : new TreeSet<String>(args.keySet())) {
+                sb.append(key).append('=');
+                sb.append(Arrays.deepToString(new Object[] { args.get(key) }));
+                sb.append(',');
+            }
+            sb.append('}');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Return the cached result for <var>key</var>, or null.
+     */
+    public static Object get(String key) {
+        final LruCache<String, Object> cache;
+        synchronized (LoaderResultCache.class) {
+            cache = sCache;
+        }
+        return cache != null ? cache.get(key) : null;
+    }
+
+    /**
+     * Cache <var>data</var> as the result of <var>loader</var> under
+     * <var>key</var>, so that it is dropped again when the loader's
+     * content changes.
+     */
+    public static void put(Loader<?> loader, String key, Object data) {
+        final LruCache<String, Object> cache;
+        synchronized (LoaderResultCache.class) {
+            cache = sCache;
+        }
+        loader.mResultCacheKey = key;
+        if (cache != null && data != null) {
+            cache.put(key, data);
+        }
+    }
+
+    /**
+     * Drop the cached result of <var>loader</var>, if any.
+     */
+    public static void invalidate(Loader<?> loader) {
+        final LruCache<String, Object> cache;
+        synchronized (LoaderResultCache.class) {
+            cache = sCache;
+        }
+        if (cache != null && loader.mResultCacheKey != null) {
+            cache.remove(loader.mResultCacheKey);
+        }
+    }
+
+    /**
+     * Discard all cached results.
+     */
+    public static void clear() {
+        final LruCache<String, Object> cache;
+        synchronized (LoaderResultCache.class) {
+            cache = sCache;
+        }
+        if (cache != null) {
+            cache.evictAll();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2012 Jake Wharton
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.content;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Where an {@link AsyncTaskLoader} runs its loads and delivers their
+ * results.  By default loads run on the executor of {@link ModernAsyncTask}
+ * and results are delivered through the main thread's looper; a scheduler
+ * set with {@link AsyncTaskLoader#setScheduler} or
+ * {@link AsyncTaskLoader#setDefaultScheduler} replaces both, for example
+ * with a {@link SynchronousLoaderScheduler} to run loaders deterministically
+ * in tests and benchmarks.
+ */
+public interface LoaderScheduler {
+    /**
+     * Return the executor that runs loads.  It is in charge of the threads
+     * it runs them on, including their priority.
+     */
+    Executor getLoadExecutor();
+
+    /**
+     * Return the executor that delivers results, progress and cancellations
+     * of loads.  It must run everything on the thread the loader is used
+     * from, in order.
+     */
+    Executor getDeliveryExecutor();
+
+    /**
+     * Run <var>runnable</var> on the thread the loader is used from after
+     * <var>delayMillis</var>, as with {@link android.os.Handler#postDelayed}.
+     */
+    void postDelayed(Runnable runnable, long delayMillis);
+
+    /**
+     * Remove any pending posts of <var>runnable</var>.
+     */
+    void removeCallbacks(Runnable runnable);
+
+    /**
+     * Return the current time in milliseconds, on the clock that
+     * {@link #postDelayed} waits by, as with
+     * {@link android.os.SystemClock#uptimeMillis}.  The loader takes all of
+     * its timings, including its update throttle, from this clock.
+     */
+    long uptimeMillis();
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2012 Jake Wharton
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.content;
+
+import java.io.PrintWriter;
+
+/**
+ * Performance counters of a {@link Loader}, as returned by
+ * {@link Loader#getStats()} and
+ * {@link android.support.v4.app.LoaderManager#getLoaderStats(int)}.
+ * Times are in milliseconds.  The queue and load times are only recorded
+ * by {@link AsyncTaskLoader}.
+ */
+public final class LoaderStats {
+    /** The number of loads that completed and whose result was delivered. */
+    public int loadCount;
+
+    /** Total and longest time a load waited in its executor's queue. */
+    public long totalQueueTime;
+    public long maxQueueTime;
+
+    /** Total and longest time spent in {@link AsyncTaskLoader#loadInBackground()}. */
+    public long totalLoadTime;
+    public long maxLoadTime;
+
+    /**
+     * Total and longest time from a load finishing on its worker thread to
+     * its result being delivered on the main thread.
+     */
+    public long totalDeliveryTime;
+    public long maxDeliveryTime;
+
+    /** The number of loads that were cancelled or dropped before running. */
+    public int cancelCount;
+
+    /** The number of load results that were thrown away. */
+    public int discardCount;
+
+    /** The number of reloads started because the loader's content changed. */
+    public int contentChangeCount;
+
+    /**
+     * The number of content change notifications that caused a reload, and
+     * the number collapsed into the latest and the largest single reload.
+     * Notifications that a running load already covered are not counted.
+     */
+    public int notificationCount;
+    public int lastReloadNotifications;
+    public int maxReloadNotifications;
+
+    public LoaderStats() {
+    }
+
+    public LoaderStats(LoaderStats other) {
+        loadCount = other.loadCount;
+        totalQueueTime = other.totalQueueTime;
+        maxQueueTime = other.maxQueueTime;
+        totalLoadTime = other.totalLoadTime;
+        maxLoadTime = other.maxLoadTime;
+        totalDeliveryTime = other.totalDeliveryTime;
+        maxDeliveryTime = other.maxDeliveryTime;
+        cancelCount = other.cancelCount;
+        discardCount = other.discardCount;
+        contentChangeCount = other.contentChangeCount;
+        notificationCount = other.notificationCount;
+        lastReloadNotifications = other.lastReloadNotifications;
+        maxReloadNotifications = other.maxReloadNotifications;
+    }
+
+    void noteLoad(long queueTime, long loadTime, long deliveryTime) {
+        loadCount++;
+        totalQueueTime += queueTime;
+        maxQueueTime = Math.max(maxQueueTime, queueTime);
+        totalLoadTime += loadTime;
+        maxLoadTime = Math.max(maxLoadTime, loadTime);
+        totalDeliveryTime += deliveryTime;
+        maxDeliveryTime = Math.max(maxDeliveryTime, deliveryTime);
+    }
+
+    void noteReloadNotifications(int count) {
+        notificationCount += count;
+        lastReloadNotifications = count;
+        maxReloadNotifications = Math.max(maxReloadNotifications, count);
+    }
+
+    public void dump(String prefix, PrintWriter writer) {
+        writer.print(prefix); writer.print("loads="); writer.print(loadCount);
+                writer.print(" cancelled="); writer.print(cancelCount);
+                writer.print(" discarded="); writer.print(discardCount);
+                writer.print(" contentChanges="); writer.println(contentChangeCount);
+        if (notificationCount > 0) {
+            writer.print(prefix); writer.print("notifications="); writer.print(notificationCount);
+                    writer.print(" perReload last="); writer.print(lastReloadNotifications);
+                    writer.print(" max="); writer.println(maxReloadNotifications);
+        }
+        if (loadCount > 0) {
+            writer.print(prefix); writer.print("avg/max queue=");
+                    writer.print(totalQueueTime / loadCount); writer.print("/");
+                    writer.print(maxQueueTime); writer.print("ms load=");
+                    writer.print(totalLoadTime / loadCount); writer.print("/");
+                    writer.print(maxLoadTime); writer.print("ms delivery=");
+                    writer.print(totalDeliveryTime / loadCount); writer.print("/");
+                    writer.print(maxDeliveryTime); writer.println("ms");
+        }
+    }
+}
@@ -18,7 +18,12 @@ package android.support.v4.content;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import android.content.BroadcastReceiver;
 import android.content.Context;
@@ -42,16 +47,41 @@ import android.util.Log;
  * <li> It is more efficient than sending a global broadcast through the
  * system.
  * </ul>
+ *
+ * <p>For frequent events within the process it also carries plain objects,
+ * without an Intent: {@link #registerEventReceiver} subscribes an
+ * {@link EventReceiver} to a class of events and {@link #sendEvent} delivers
+ * an event to the receivers of its class, batched on the main thread along
+ * with broadcasts.
  */
 public class LocalBroadcastManager {
+    /**
+     * Receives the events of one class sent with {@link #sendEvent}.
+     */
+    public interface EventReceiver<T> {
+        /**
+         * Called on the main thread with an event sent by
+         * {@link #sendEvent}, or on the sending thread with one sent by
+         * {@link #sendEventSync}.
+         */
+        void onEvent(T event);
+    }
+
     private static class ReceiverRecord {
         final IntentFilter filter;
         final BroadcastReceiver receiver;
-        boolean broadcasting;
+        // Order of registration, to keep delivery order when the receivers
+        // of a broadcast are collected from several index entries.
+        final int sequence;
+        // Where to run the receiver, or null for the main thread.
+        final Handler handler;
 
-        ReceiverRecord(IntentFilter _filter, BroadcastReceiver _receiver) {
+        ReceiverRecord(IntentFilter _filter, BroadcastReceiver _receiver, int _sequence,
+                Handler _handler) {
             filter = _filter;
             receiver = _receiver;
+            sequence = _sequence;
+            handler = _handler;
         }
 
         @Override
@@ -61,18 +91,256 @@ public class LocalBroadcastManager {
             builder.append(receiver);
             builder.append(" filter=");
             builder.append(filter);
+            if (handler != null) {
+                builder.append(" handler=");
+                builder.append(handler);
+            }
             builder.append("}");
             return builder.toString();
         }
     }
 
+    /**
+     * The receivers registered for one action, in order of registration,
+     * with indexes of their filters by data scheme, MIME type and category.
+     * The indexes narrow a broadcast down to the receivers whose filters
+     * could possibly match it, so that {@link IntentFilter#match} is only
+     * run on those.  Once published in {@link #mActions} it is never
+     * modified; registrations change a copy.
+     */
+    private static class ActionReceivers {
+        final ArrayList<ReceiverRecord> all = new ArrayList<ReceiverRecord>(1);
+        // Filters with neither data schemes nor types; these only match
+        // intents without data or a type.
+        final ArrayList<ReceiverRecord> noData = new ArrayList<ReceiverRecord>();
+        // Filters with data schemes, under each of their schemes.
+        final HashMap<String, ArrayList<ReceiverRecord>> byScheme
+                = new HashMap<String, ArrayList<ReceiverRecord>>();
+        // Filters with data types and no schemes, under each base type, where
+        // "*" stands for any type.
+        final HashMap<String, ArrayList<ReceiverRecord>> byType
+                = new HashMap<String, ArrayList<ReceiverRecord>>();
+        final ArrayList<ReceiverRecord> typed = new ArrayList<ReceiverRecord>();
+        // Filters under each of their categories.
+        final HashMap<String, ArrayList<ReceiverRecord>> byCategory
+                = new HashMap<String, ArrayList<ReceiverRecord>>();
+
+        ActionReceivers() {
+        }
+
+        ActionReceivers(ActionReceivers other) {
+            all.addAll(other.all);
+            noData.addAll(other.noData);
+            typed.addAll(other.typed);
+            copyInto(byScheme, other.byScheme);
+            copyInto(byType, other.byType);
+            copyInto(byCategory, other.byCategory);
+        }
+
+        void add(ReceiverRecord record) {
+            final IntentFilter filter = record.filter;
+            all.add(record);
+            final int schemes = filter.countDataSchemes();
+            final int types = filter.countDataTypes();
+            if (schemes > 0) {
+                for (int i=0; i<schemes; i++) {
+                    addTo(byScheme, filter.getDataScheme(i), record);
+                }
+            } else if (types > 0) {
+                typed.add(record);
+                for (int i=0; i<types; i++) {
+                    addTo(byType, baseType(filter.getDataType(i)), record);
+                }
+            } else {
+                noData.add(record);
+            }
+            for (int i=0; i<filter.countCategories(); i++) {
+                addTo(byCategory, filter.getCategory(i), record);
+            }
+        }
+
+        /**
+         * Remove every filter of <var>receiver</var>.
+         *
+         * @return True if no receivers are left.
+         */
+        boolean remove(BroadcastReceiver receiver) {
+            removeFrom(all, receiver);
+            removeFrom(noData, receiver);
+            removeFrom(typed, receiver);
+            removeFrom(byScheme, receiver);
+            removeFrom(byType, receiver);
+            removeFrom(byCategory, receiver);
+            return all.isEmpty();
+        }
+
+        /**
+         * Return, in order of registration, the receivers whose filters
+         * could match a broadcast with the given type, data and categories.
+         * The list may contain receivers that do not match, and may contain
+         * a receiver more than once.
+         */
+        ArrayList<ReceiverRecord> candidates(String type, String scheme, Uri data,
+                Set<String> categories) {
+            // A filter must have every category of the intent, so only those
+            // with the least common of them can match.
+            ArrayList<ReceiverRecord> byCategories = null;
+            if (categories != null && categories.size() > 0) {
+                for (String category : categories) {
+                    ArrayList<ReceiverRecord> records = byCategory.get(category);
+                    if (records == null) {
+                        return null;
+                    }
+                    if (byCategories == null || records.size() < byCategories.size()) {
+                        byCategories = records;
+                    }
+                }
+            }
+
+            // Filters with schemes must list the intent's scheme, filters
+            // without schemes or types only take intents without data, and
+            // filters with only types need the type and a local scheme.
+            final String key = scheme != null ? scheme : "";
+            ArrayList<ReceiverRecord> byData = byScheme.get(key);
+            if (type == null && data == null) {
+                byData = merge(byData, noData);
+            }
+            if (type != null && (key.length() == 0 || "content".equals(key)
+                    || "file".equals(key))) {
+                if (type.indexOf('*') >= 0) {
+                    // Wildcards in the intent's type can match any filter type.
+                    byData = merge(byData, typed);
+                } else {
+                    byData = merge(byData, byType.get(baseType(type)));
+                    byData = merge(byData, byType.get("*"));
+                }
+            }
+
+            if (byCategories != null && (byData == null || byCategories.size() < byData.size())) {
+                return byCategories;
+            }
+            return byData;
+        }
+
+        /**
+         * Return the base of a type as stored by {@link IntentFilter}:
+         * "image" for both "image/png" and "image/*", and "*" for any type.
+         */
+        private static String baseType(String type) {
+            final int slash = type.indexOf('/');
+            return slash >= 0 ? type.substring(0, slash) : type;
+        }
+
+        private static void copyInto(HashMap<String, ArrayList<ReceiverRecord>> index,
+                HashMap<String, ArrayList<ReceiverRecord>> other) {
+            for (Map.Entry<String, ArrayList<ReceiverRecord>> entry : other.entrySet()) {
+                index.put(entry.getKey(), new ArrayList<ReceiverRecord>(entry.getValue()));
+            }
+        }
+
+        private static void addTo(HashMap<String, ArrayList<ReceiverRecord>> index,
+                String key, ReceiverRecord record) {
+            ArrayList<ReceiverRecord> records = index.get(key);
+            if (records == null) {
+                records = new ArrayList<ReceiverRecord>(1);
+                index.put(key, records);
+            }
+            // Records are added in order, so a filter listing two keys that
+            // map to the same entry shows up as a repeat of the last record.
+            if (records.isEmpty() || records.get(records.size()-1) != record) {
+                records.add(record);
+            }
+        }
+
+        private static void removeFrom(ArrayList<ReceiverRecord> records,
+                BroadcastReceiver receiver) {
+            for (int k=0; k<records.size(); k++) {
+                if (records.get(k).receiver == receiver) {
+                    records.remove(k);
+                    k--;
+                }
+            }
+        }
+
+        private static void removeFrom(HashMap<String, ArrayList<ReceiverRecord>> index,
+                BroadcastReceiver receiver) {
+            Iterator<ArrayList<ReceiverRecord>> it = index.values().iterator();
+            while (it.hasNext()) {
+                ArrayList<ReceiverRecord> records = it.next();
+                removeFrom(records, receiver);
+                if (records.isEmpty()) {
+                    it.remove();
+                }
+            }
+        }
+
+        /**
+         * Merge two lists that are in order of registration.  Either may be
+         * null or returned as is.
+         */
+        private static ArrayList<ReceiverRecord> merge(ArrayList<ReceiverRecord> a,
+                ArrayList<ReceiverRecord> b) {
+            if (a == null || a.isEmpty()) {
+                return b;
+            }
+            if (b == null || b.isEmpty()) {
+                return a;
+            }
+            ArrayList<ReceiverRecord> merged = new ArrayList<ReceiverRecord>(a.size() + b.size());
+            int i = 0, j = 0;
+            while (i < a.size() && j < b.size()) {
+                if (a.get(i).sequence <= b.get(j).sequence) {
+                    merged.add(a.get(i++));
+                } else {
+                    merged.add(b.get(j++));
+                }
+            }
+            merged.addAll(a.subList(i, a.size()));
+            merged.addAll(b.subList(j, b.size()));
+            return merged;
+        }
+
+        @Override
+        public String toString() {
+            return all.toString();
+        }
+    }
+
+    /**
+     * A broadcast on its way to a receiver registered with a handler.
+     */
+    private final class HandlerDelivery implements Runnable {
+        final BroadcastReceiver receiver;
+        final Intent intent;
+
+        HandlerDelivery(BroadcastReceiver _receiver, Intent _intent) {
+            receiver = _receiver;
+            intent = _intent;
+        }
+
+        public void run() {
+            receiver.onReceive(mAppContext, intent);
+        }
+    }
+
     private static class BroadcastRecord {
         final Intent intent;
         final ArrayList<ReceiverRecord> receivers;
+        final Object event;
+        final ArrayList<EventReceiver<Object>> eventReceivers;
 
         BroadcastRecord(Intent _intent, ArrayList<ReceiverRecord> _receivers) {
             intent = _intent;
             receivers = _receivers;
+            event = null;
+            eventReceivers = null;
+        }
+
+        BroadcastRecord(Object _event, ArrayList<EventReceiver<Object>> _eventReceivers) {
+            intent = null;
+            receivers = null;
+            event = _event;
+            eventReceivers = _eventReceivers;
         }
     }
 
@@ -81,13 +349,25 @@ public class LocalBroadcastManager {
 
     private final Context mAppContext;
 
+    // Guards registration; only registration touches mReceivers.
     private final HashMap<BroadcastReceiver, ArrayList<IntentFilter>> mReceivers
             = new HashMap<BroadcastReceiver, ArrayList<IntentFilter>>();
-    private final HashMap<String, ArrayList<ReceiverRecord>> mActions
-            = new HashMap<String, ArrayList<ReceiverRecord>>();
+    // Replaced as a whole on every registration, so that broadcasts can be
+    // matched against it without locking.
+    private volatile HashMap<String, ActionReceivers> mActions
+            = new HashMap<String, ActionReceivers>();
+    private int mNextSequence;
+    // The latest sticky broadcast of each action, guarded by mReceivers.
+    private final HashMap<String, Intent> mStickyBroadcasts = new HashMap<String, Intent>();
+    // Event receivers by event class, replaced as a whole like mActions.
+    // The lists are never modified once published.
+    private volatile HashMap<Class<?>, ArrayList<EventReceiver<Object>>> mEventReceivers
+            = new HashMap<Class<?>, ArrayList<EventReceiver<Object>>>();
 
-    private final ArrayList<BroadcastRecord> mPendingBroadcasts
-            = new ArrayList<BroadcastRecord>();
+    private final ConcurrentLinkedQueue<BroadcastRecord> mPendingBroadcasts
+            = new ConcurrentLinkedQueue<BroadcastRecord>();
+    // Whether MSG_EXEC_PENDING_BROADCASTS has been sent and not yet handled.
+    private final AtomicBoolean mExecScheduled = new AtomicBoolean();
 
     static final int MSG_EXEC_PENDING_BROADCASTS = 1;
 
@@ -113,6 +393,9 @@ public class LocalBroadcastManager {
             public void handleMessage(Message msg) {
                 switch (msg.what) {
                     case MSG_EXEC_PENDING_BROADCASTS:
+                        // Clear the flag before draining, so that records
+                        // queued from now on schedule another message.
+                        mExecScheduled.set(false);
                         executePendingBroadcasts();
                         break;
                     default:
@@ -124,6 +407,10 @@ public class LocalBroadcastManager {
 
     /**
      * Register a receive for any local broadcasts that match the given IntentFilter.
+     * If a sticky broadcast matching the filter has been sent with
+     * {@link #sendStickyBroadcast}, it is queued for the receiver like any
+     * other broadcast: it is delivered asynchronously, after this call
+     * returns, but ahead of any broadcasts sent after this call.
      *
      * @param receiver The BroadcastReceiver to handle the broadcast.
      * @param filter Selects the Intent broadcasts to be received.
@@ -131,22 +418,56 @@ public class LocalBroadcastManager {
      * @see #unregisterReceiver
      */
     public void registerReceiver(BroadcastReceiver receiver, IntentFilter filter) {
+        registerReceiver(receiver, filter, null);
+    }
+
+    /**
+     * Register a receive for any local broadcasts that match the given
+     * IntentFilter, to be run on the thread of <var>handler</var> rather
+     * than the main thread.  This keeps receivers that do slow work, such
+     * as writing to disk, off the main thread.  Broadcasts are posted to
+     * the handler as they are sent, so the receiver gets them in the order
+     * they were sent, but in no set order with receivers on other threads.
+     * They are posted even by {@link #sendBroadcastSync}.
+     *
+     * @param receiver The BroadcastReceiver to handle the broadcast.
+     * @param filter Selects the Intent broadcasts to be received.
+     * @param handler Handler of the thread to run the receiver on, or null
+     *     for the main thread.
+     *
+     * @see #unregisterReceiver
+     */
+    public void registerReceiver(BroadcastReceiver receiver, IntentFilter filter,
+            Handler handler) {
         synchronized (mReceivers) {
-            ReceiverRecord entry = new ReceiverRecord(filter, receiver);
+            ReceiverRecord entry = new ReceiverRecord(filter, receiver, mNextSequence++,
+                    handler);
             ArrayList<IntentFilter> filters = mReceivers.get(receiver);
             if (filters == null) {
                 filters = new ArrayList<IntentFilter>(1);
                 mReceivers.put(receiver, filters);
             }
             filters.add(filter);
+            HashMap<String, ActionReceivers> actions
+                    = new HashMap<String, ActionReceivers>(mActions);
             for (int i=0; i<filter.countActions(); i++) {
                 String action = filter.getAction(i);
-                ArrayList<ReceiverRecord> entries = mActions.get(action);
-                if (entries == null) {
-                    entries = new ArrayList<ReceiverRecord>(1);
-                    mActions.put(action, entries);
-                }
+                ActionReceivers entries = actions.get(action);
+                entries = entries != null ? new ActionReceivers(entries) : new ActionReceivers();
                 entries.add(entry);
+                actions.put(action, entries);
+            }
+            mActions = actions;
+
+            for (int i=0; i<filter.countActions(); i++) {
+                Intent sticky = mStickyBroadcasts.get(filter.getAction(i));
+                if (sticky != null && filter.match(mAppContext.getContentResolver(),
+                        sticky, true, TAG) >= 0) {
+                    if (DEBUG) Log.v(TAG, "Delivering sticky " + sticky + " to " + entry);
+                    ArrayList<ReceiverRecord> receivers = new ArrayList<ReceiverRecord>(1);
+                    receivers.add(entry);
+                    deliver(sticky, receivers);
+                }
             }
         }
     }
@@ -166,24 +487,25 @@ public class LocalBroadcastManager {
             if (filters == null) {
                 return;
             }
+            HashMap<String, ActionReceivers> actions
+                    = new HashMap<String, ActionReceivers>(mActions);
+            HashSet<String> done = new HashSet<String>();
             for (int i=0; i<filters.size(); i++) {
                 IntentFilter filter = filters.get(i);
                 for (int j=0; j<filter.countActions(); j++) {
                     String action = filter.getAction(j);
-                    ArrayList<ReceiverRecord> receivers = mActions.get(action);
-                    if (receivers != null) {
-                        for (int k=0; k<receivers.size(); k++) {
-                            if (receivers.get(k).receiver == receiver) {
-                                receivers.remove(k);
-                                k--;
-                            }
-                        }
-                        if (receivers.size() <= 0) {
-                            mActions.remove(action);
+                    ActionReceivers receivers = actions.get(action);
+                    if (receivers != null && done.add(action)) {
+                        receivers = new ActionReceivers(receivers);
+                        if (receivers.remove(receiver)) {
+                            actions.remove(action);
+                        } else {
+                            actions.put(action, receivers);
                         }
                     }
                 }
             }
+            mActions = actions;
         }
     }
 
@@ -198,76 +520,112 @@ public class LocalBroadcastManager {
      * @see #registerReceiver
      */
     public boolean sendBroadcast(Intent intent) {
-        synchronized (mReceivers) {
-            final String action = intent.getAction();
-            final String type = intent.resolveTypeIfNeeded(
-                    mAppContext.getContentResolver());
-            final Uri data = intent.getData();
-            final String scheme = intent.getScheme();
-            final Set<String> categories = intent.getCategories();
-
-            final boolean debug = DEBUG ||
-                    ((intent.getFlags() & Intent.FLAG_DEBUG_LOG_RESOLUTION) != 0);
-            if (debug) Log.v(
-                    TAG, "Resolving type " + type + " scheme " + scheme
-                    + " of intent " + intent);
-
-            ArrayList<ReceiverRecord> entries = mActions.get(intent.getAction());
-            if (entries != null) {
-                if (debug) Log.v(TAG, "Action list: " + entries);
-
-                ArrayList<ReceiverRecord> receivers = null;
-                for (int i=0; i<entries.size(); i++) {
-                    ReceiverRecord receiver = entries.get(i);
-                    if (debug) Log.v(TAG, "Matching against filter " + receiver.filter);
-
-                    if (receiver.broadcasting) {
-                        if (debug) {
-                            Log.v(TAG, "  Filter's target already added");
-                        }
-                        continue;
-                    }
+        final String action = intent.getAction();
+        final ActionReceivers actionReceivers = mActions.get(action);
+        if (actionReceivers == null) {
+            // Nobody is listening; don't bother resolving the type.
+            return false;
+        }
+        final String type = intent.resolveTypeIfNeeded(
+                mAppContext.getContentResolver());
+        final Uri data = intent.getData();
+        final String scheme = intent.getScheme();
+        final Set<String> categories = intent.getCategories();
 
-                    int match = receiver.filter.match(action, type, scheme, data,
-                            categories, "LocalBroadcastManager");
-                    if (match >= 0) {
-                        if (debug) Log.v(TAG, "  Filter matched!  match=0x" +
-                                Integer.toHexString(match));
-                        if (receivers == null) {
-                            receivers = new ArrayList<ReceiverRecord>();
-                        }
-                        receivers.add(receiver);
-                        receiver.broadcasting = true;
-                    } else {
-                        if (debug) {
-                            String reason;
-                            switch (match) {
-                                case IntentFilter.NO_MATCH_ACTION: reason = "action"; break;
-                                case IntentFilter.NO_MATCH_CATEGORY: reason = "category"; break;
-                                case IntentFilter.NO_MATCH_DATA: reason = "data"; break;
-                                case IntentFilter.NO_MATCH_TYPE: reason = "type"; break;
-                                default: reason = "unknown reason"; break;
-                            }
-                            Log.v(TAG, "  Filter did not match: " + reason);
-                        }
+        final boolean debug = DEBUG ||
+                ((intent.getFlags() & Intent.FLAG_DEBUG_LOG_RESOLUTION) != 0);
+        if (debug) Log.v(
+                TAG, "Resolving type " + type + " scheme " + scheme
+                + " of intent " + intent);
+
+        final ArrayList<ReceiverRecord> entries = actionReceivers.candidates(
+                type, scheme, data, categories);
+        if (entries != null) {
+            if (debug) Log.v(TAG, "Action list: " + actionReceivers
+                    + " candidates: " + entries);
+
+            ArrayList<ReceiverRecord> receivers = null;
+            ReceiverRecord previous = null;
+            for (int i=0; i<entries.size(); i++) {
+                ReceiverRecord receiver = entries.get(i);
+                if (debug) Log.v(TAG, "Matching against filter " + receiver.filter);
+
+                // Candidates are in order of registration, so a receiver
+                // that is listed twice is listed twice in a row.
+                if (receiver == previous) {
+                    if (debug) {
+                        Log.v(TAG, "  Filter's target already added");
                     }
+                    continue;
                 }
+                previous = receiver;
 
-                if (receivers != null) {
-                    for (int i=0; i<receivers.size(); i++) {
-                        receivers.get(i).broadcasting = false;
+                int match = receiver.filter.match(action, type, scheme, data,
+                        categories, "LocalBroadcastManager");
+                if (match >= 0) {
+                    if (debug) Log.v(TAG, "  Filter matched!  match=0x" +
+                            Integer.toHexString(match));
+                    if (receivers == null) {
+                        receivers = new ArrayList<ReceiverRecord>();
                     }
-                    mPendingBroadcasts.add(new BroadcastRecord(intent, receivers));
-                    if (!mHandler.hasMessages(MSG_EXEC_PENDING_BROADCASTS)) {
-                        mHandler.sendEmptyMessage(MSG_EXEC_PENDING_BROADCASTS);
+                    receivers.add(receiver);
+                } else {
+                    if (debug) {
+                        String reason;
+                        switch (match) {
+                            case IntentFilter.NO_MATCH_ACTION: reason = "action"; break;
+                            case IntentFilter.NO_MATCH_CATEGORY: reason = "category"; break;
+                            case IntentFilter.NO_MATCH_DATA: reason = "data"; break;
+                            case IntentFilter.NO_MATCH_TYPE: reason = "type"; break;
+                            default: reason = "unknown reason"; break;
+                        }
+                        Log.v(TAG, "  Filter did not match: " + reason);
                     }
-                    return true;
                 }
             }
+
+            if (receivers != null) {
+                deliver(intent, receivers);
+                return true;
+            }
         }
         return false;
     }
 
+    /**
+     * Like {@link #sendBroadcast(Intent)}, but the Intent is also kept as the
+     * latest state for its action: receivers registered later that match it
+     * get it as soon as they register.  It replaces any sticky broadcast
+     * sent before for the same action.
+     *
+     * @param intent The Intent to broadcast and keep.
+     *
+     * @see #removeStickyBroadcast
+     */
+    public void sendStickyBroadcast(Intent intent) {
+        final Intent sticky = new Intent(intent);
+        // Keeping and sending under the registration lock means a receiver
+        // registering meanwhile gets the broadcast exactly once.
+        synchronized (mReceivers) {
+            mStickyBroadcasts.put(sticky.getAction(), sticky);
+            sendBroadcast(sticky);
+        }
+    }
+
+    /**
+     * Forget the sticky broadcast kept for the action of <var>intent</var>,
+     * so that receivers registered from now on do not get it.
+     *
+     * @param intent An Intent with the action of the sticky broadcast.
+     *
+     * @see #sendStickyBroadcast
+     */
+    public void removeStickyBroadcast(Intent intent) {
+        synchronized (mReceivers) {
+            mStickyBroadcasts.remove(intent.getAction());
+        }
+    }
+
     /**
      * Like {@link #sendBroadcast(Intent)}, but if there are any receivers for
      * the Intent this function will block and immediately dispatch them before
@@ -279,23 +637,136 @@ public class LocalBroadcastManager {
         }
     }
 
-    private void executePendingBroadcasts() {
-        while (true) {
-            BroadcastRecord[] brs = null;
-            synchronized (mReceivers) {
-                final int N = mPendingBroadcasts.size();
-                if (N <= 0) {
-                    return;
+    /**
+     * Register a receiver for the events of the given class.  Only events
+     * whose class is exactly <var>eventClass</var> are delivered to it, not
+     * those of its subclasses.  A receiver may be registered for several
+     * classes.
+     *
+     * @param eventClass The class of events to receive.
+     * @param receiver The receiver to handle the events.
+     *
+     * @see #unregisterEventReceiver
+     */
+    @SuppressWarnings("unchecked")
+    public <T> void registerEventReceiver(Class<T> eventClass, EventReceiver<? super T> receiver) {
+        synchronized (mReceivers) {
+            HashMap<Class<?>, ArrayList<EventReceiver<Object>>> eventReceivers
+                    = new HashMap<Class<?>, ArrayList<EventReceiver<Object>>>(mEventReceivers);
+            ArrayList<EventReceiver<Object>> receivers = eventReceivers.get(eventClass);
+            receivers = receivers != null
+                    ? new ArrayList<EventReceiver<Object>>(receivers)
+                    : new ArrayList<EventReceiver<Object>>(1);
+            receivers.add((EventReceiver<Object>) receiver);
+            eventReceivers.put(eventClass, receivers);
+            mEventReceivers = eventReceivers;
+        }
+    }
+
+    /**
+     * Unregister a receiver from every class of events it was registered
+     * for.
+     *
+     * @param receiver The receiver to unregister.
+     *
+     * @see #registerEventReceiver
+     */
+    public void unregisterEventReceiver(EventReceiver<?> receiver) {
+        synchronized (mReceivers) {
+            HashMap<Class<?>, ArrayList<EventReceiver<Object>>> eventReceivers
+                    = new HashMap<Class<?>, ArrayList<EventReceiver<Object>>>(mEventReceivers);
+            Iterator<Map.Entry<Class<?>, ArrayList<EventReceiver<Object>>>> it
+                    = eventReceivers.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Class<?>, ArrayList<EventReceiver<Object>>> entry = it.next();
+                ArrayList<EventReceiver<Object>> receivers
+                        = new ArrayList<EventReceiver<Object>>(entry.getValue());
+                for (int k=receivers.size()-1; k>=0; k--) {
+                    if (receivers.get(k) == receiver) {
+                        receivers.remove(k);
+                    }
+                }
+                if (receivers.isEmpty()) {
+                    it.remove();
+                } else if (receivers.size() != entry.getValue().size()) {
+                    entry.setValue(receivers);
+                }
+            }
+            mEventReceivers = eventReceivers;
+        }
+    }
+
+    /**
+     * Deliver <var>event</var> to the receivers registered for its class.
+     * Like {@link #sendBroadcast}, this returns immediately and the
+     * receivers are run later on the main thread, in order with broadcasts.
+     *
+     * @return Whether any receivers were registered for the event.
+     */
+    public boolean sendEvent(Object event) {
+        final ArrayList<EventReceiver<Object>> receivers = mEventReceivers.get(event.getClass());
+        if (receivers == null) {
+            return false;
+        }
+        if (DEBUG) Log.v(TAG, "Sending event " + event + " to " + receivers);
+        enqueue(new BroadcastRecord(event, receivers));
+        return true;
+    }
+
+    /**
+     * Like {@link #sendEvent}, but if there are any receivers for the event
+     * this function will block and immediately dispatch them, and anything
+     * else pending, before returning.
+     */
+    public void sendEventSync(Object event) {
+        if (sendEvent(event)) {
+            executePendingBroadcasts();
+        }
+    }
+
+    /**
+     * Send <var>intent</var> to <var>receivers</var>: it is posted right
+     * away to those registered with a handler, and queued for the others
+     * to get on the main thread.
+     */
+    private void deliver(Intent intent, ArrayList<ReceiverRecord> receivers) {
+        ArrayList<ReceiverRecord> main = receivers;
+        for (int i=0; i<receivers.size(); i++) {
+            ReceiverRecord record = receivers.get(i);
+            if (record.handler != null) {
+                if (main == receivers) {
+                    main = new ArrayList<ReceiverRecord>(receivers.subList(0, i));
                 }
-                brs = new BroadcastRecord[N];
-                mPendingBroadcasts.toArray(brs);
-                mPendingBroadcasts.clear();
+                record.handler.post(new HandlerDelivery(record.receiver, intent));
+            } else if (main != receivers) {
+                main.add(record);
             }
-            for (int i=0; i<brs.length; i++) {
-                BroadcastRecord br = brs[i];
-                for (int j=0; j<br.receivers.size(); j++) {
-                    br.receivers.get(j).receiver.onReceive(mAppContext, br.intent);
+        }
+        if (!main.isEmpty()) {
+            enqueue(new BroadcastRecord(intent, main));
+        }
+    }
+
+    private void enqueue(BroadcastRecord record) {
+        mPendingBroadcasts.add(record);
+        // The record is queued first, so if a message is already
+        // scheduled it will pick the record up.
+        if (mExecScheduled.compareAndSet(false, true)) {
+            mHandler.sendEmptyMessage(MSG_EXEC_PENDING_BROADCASTS);
+        }
+    }
+
+    private void executePendingBroadcasts() {
+        BroadcastRecord br;
+        while ((br = mPendingBroadcasts.poll()) != null) {
+            if (br.eventReceivers != null) {
+                for (int j=0; j<br.eventReceivers.size(); j++) {
+                    br.eventReceivers.get(j).onEvent(br.event);
                 }
+                continue;
+            }
+            for (int j=0; j<br.receivers.size(); j++) {
+                br.receivers.get(j).receiver.onReceive(mAppContext, br.intent);
             }
         }
     }
@@ -16,19 +16,20 @@
 
 package android.support.v4.content;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
-import java.util.concurrent.FutureTask;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import android.os.Handler;
 import android.os.Message;
@@ -65,18 +66,64 @@ public abstract class ModernAsyncTask<Params, Progress, Result> {
             = new ThreadPoolExecutor(CORE_POOL_SIZE, MAXIMUM_POOL_SIZE, KEEP_ALIVE,
                     TimeUnit.SECONDS, sPoolWorkQueue, sThreadFactory);
 
+    /**
+     * Priority of work the user is waiting on, such as a load for a visible
+     * fragment.
+     */
+    public static final int PRIORITY_HIGH = 10;
+
+    /**
+     * Priority of tasks that have not been given one.
+     */
+    public static final int PRIORITY_DEFAULT = 0;
+
+    /**
+     * Priority of speculative work, such as prefetching data that may be
+     * shown later.
+     */
+    public static final int PRIORITY_PREFETCH = -10;
+
+    private static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
+    private static final int PRIORITY_POOL_SIZE = Math.max(2, CPU_COUNT);
+
+    /**
+     * An {@link Executor} with one thread per CPU core that runs queued
+     * tasks in order of their {@link #setPriority priority}, and in
+     * submission order within the same priority.  Its queue is unbounded, so
+     * bursts of work wait for a thread rather than spawning more threads or
+     * being rejected.  This is the default executor.
+     */
+    public static final Executor PRIORITY_EXECUTOR = new PriorityExecutor();
+
     private static final int MESSAGE_POST_RESULT = 0x1;
     private static final int MESSAGE_POST_PROGRESS = 0x2;
 
     private static final InternalHandler sHandler = new InternalHandler();
 
-    private static volatile Executor sDefaultExecutor = THREAD_POOL_EXECUTOR;
-    private final WorkerRunnable<Params, Result> mWorker;
-    private final FutureTask<Result> mFuture;
+    private static volatile Executor sDefaultExecutor = PRIORITY_EXECUTOR;
 
-    private volatile Status mStatus = Status.PENDING;
+    // States of Core.  A task moves from PENDING to RUNNING to COMPLETED,
+    // or to CANCELLED from either of the first two.
+    private static final int STATE_PENDING = 0;
+    private static final int STATE_RUNNING = 1;
+    private static final int STATE_COMPLETED = 2;
+    private static final int STATE_CANCELLED = 3;
 
-    private final AtomicBoolean mTaskInvoked = new AtomicBoolean();
+    private final Core mCore = new Core();
+
+    private volatile Status mStatus = Status.PENDING;
+    private volatile int mPriority = PRIORITY_DEFAULT;
+
+    private Params[] mParams;
+    private volatile PriorityExecutor mQueuedOn;
+    // Where results and progress are delivered instead of sHandler.
+    private Executor mDelivery;
+    // Set on the worker thread before the state leaves RUNNING.
+    private Result mResult;
+    private Throwable mException;
+    // Progress published but not yet handed to onProgressUpdate, guarded
+    // by mCore.
+    private ArrayList<Progress[]> mPendingProgress;
 
     /**
      * Indicates the current status of the task. Each status will be set only once
@@ -102,59 +149,80 @@ public abstract class ModernAsyncTask<Params, Progress, Result> {
         sHandler.getLooper();
     }
 
-    /** @hide */
+    /**
+     * Set the executor used by {@link #execute(Object[])} and
+     * {@link #execute(Runnable)}.  The default is {@link #PRIORITY_EXECUTOR}.
+     */
     public static void setDefaultExecutor(Executor exec) {
         sDefaultExecutor = exec;
     }
 
     /**
-     * Creates a new asynchronous task. This constructor must be invoked on the UI thread.
+     * Set the priority of this task, one of {@link #PRIORITY_HIGH},
+     * {@link #PRIORITY_DEFAULT} or {@link #PRIORITY_PREFETCH} or any value
+     * in between.  Tasks with a higher priority are started first by
+     * {@link #PRIORITY_EXECUTOR}; other executors ignore it.  Must be called
+     * before the task is executed.
      */
-    public ModernAsyncTask() {
-        mWorker = new WorkerRunnable<Params, Result>() {
-            public Result call() throws Exception {
-                mTaskInvoked.set(true);
+    public final void setPriority(int priority) {
+        mPriority = priority;
+    }
 
-                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
-                return postResult(doInBackground(mParams));
-            }
-        };
-
-        mFuture = new FutureTask<Result>(mWorker) {
-            @Override
-            protected void done() {
-                try {
-                    final Result result = get();
-
-                    postResultIfNotInvoked(result);
-                } catch (InterruptedException e) {
-                    android.util.Log.w(LOG_TAG, e);
-                } catch (ExecutionException e) {
-                    throw new RuntimeException("An error occured while executing doInBackground()",
-                            e.getCause());
-                } catch (CancellationException e) {
-                    postResultIfNotInvoked(null);
-                } catch (Throwable t) {
-                    throw new RuntimeException("An error occured while executing "
-                            + "doInBackground()", t);
-                }
-            }
-        };
+    public final int getPriority() {
+        return mPriority;
+    }
+
+    /**
+     * Change the priority of a task that may already have been executed.
+     * If it is still waiting in the queue of {@link #PRIORITY_EXECUTOR} it
+     * is moved to its place for the new priority.
+     */
+    final void updatePriority(int priority) {
+        mPriority = priority;
+        final PriorityExecutor exec = mQueuedOn;
+        if (exec != null && mCore.get() == STATE_PENDING) {
+            exec.requeue(mCore, priority);
+        }
     }
 
-    private void postResultIfNotInvoked(Result result) {
-        final boolean wasTaskInvoked = mTaskInvoked.get();
-        if (!wasTaskInvoked) {
-            postResult(result);
+    /**
+     * Return true if <var>exec</var>, or the default executor if it is
+     * null, is a priority executor with no idle thread for another task.
+     * Other executors are never considered busy.
+     */
+    static boolean isBusy(Executor exec) {
+        if (exec == null) {
+            exec = sDefaultExecutor;
         }
+        return exec instanceof PriorityExecutor && ((PriorityExecutor) exec).isBusy();
     }
 
-    private Result postResult(Result result) {
-        @SuppressWarnings("unchecked")
-        Message message = sHandler.obtainMessage(MESSAGE_POST_RESULT,
-                new AsyncTaskResult<Result>(this, result));
-        message.sendToTarget();
-        return result;
+    /**
+     * Creates a new asynchronous task. This constructor must be invoked on the UI thread.
+     */
+    public ModernAsyncTask() {
+    }
+
+    /**
+     * Deliver results and progress on <var>delivery</var> rather than on
+     * the main thread's looper.  Its executor then also owns the priority
+     * of the threads the task runs on.  Must be called before the task is
+     * executed.
+     */
+    final void setDeliveryExecutor(Executor delivery) {
+        mDelivery = delivery;
+    }
+
+    private void postResult() {
+        if (mDelivery != null) {
+            mDelivery.execute(new Runnable() {
+                public void run() {
+                    finish();
+                }
+            });
+        } else {
+            sHandler.obtainMessage(MESSAGE_POST_RESULT, this).sendToTarget();
+        }
     }
 
     /**
@@ -264,7 +332,7 @@ public abstract class ModernAsyncTask<Params, Progress, Result> {
      * @see #cancel(boolean)
      */
     public final boolean isCancelled() {
-        return mFuture.isCancelled();
+        return mCore.get() == STATE_CANCELLED;
     }
 
     /**
@@ -297,7 +365,7 @@ public abstract class ModernAsyncTask<Params, Progress, Result> {
      * @see #onCancelled(Object)
      */
     public final boolean cancel(boolean mayInterruptIfRunning) {
-        return mFuture.cancel(mayInterruptIfRunning);
+        return mCore.cancel(mayInterruptIfRunning);
     }
 
     /**
@@ -312,7 +380,12 @@ public abstract class ModernAsyncTask<Params, Progress, Result> {
      *         while waiting.
      */
     public final Result get() throws InterruptedException, ExecutionException {
-        return mFuture.get();
+        synchronized (mCore) {
+            while (mCore.get() < STATE_COMPLETED) {
+                mCore.wait();
+            }
+        }
+        return getDone();
     }
 
     /**
@@ -332,7 +405,40 @@ public abstract class ModernAsyncTask<Params, Progress, Result> {
      */
     public final Result get(long timeout, TimeUnit unit) throws InterruptedException,
             ExecutionException, TimeoutException {
-        return mFuture.get(timeout, unit);
+        long remaining = unit.toNanos(timeout);
+        final long deadline = System.nanoTime() + remaining;
+        synchronized (mCore) {
+            while (mCore.get() < STATE_COMPLETED) {
+                if (remaining <= 0) {
+                    throw new TimeoutException();
+                }
+                TimeUnit.NANOSECONDS.timedWait(mCore, remaining);
+                remaining = deadline - System.nanoTime();
+            }
+        }
+        return getDone();
+    }
+
+    private Result getDone() throws ExecutionException {
+        if (mCore.get() == STATE_CANCELLED) {
+            throw new CancellationException();
+        }
+        if (mException != null) {
+            throw new ExecutionException(mException);
+        }
+        return mResult;
+    }
+
+    /**
+     * Block until {@link #onPostExecute} or {@link #onCancelled(Object)} has
+     * returned.  Must not be called on the UI thread.
+     */
+    final void waitForFinish() throws InterruptedException {
+        synchronized (mCore) {
+            while (mStatus != Status.FINISHED) {
+                mCore.wait();
+            }
+        }
     }
 
     /**
@@ -413,8 +519,13 @@ public abstract class ModernAsyncTask<Params, Progress, Result> {
 
         onPreExecute();
 
-        mWorker.mParams = params;
-        exec.execute(mFuture);
+        mParams = params;
+        if (exec instanceof PriorityExecutor) {
+            mQueuedOn = (PriorityExecutor) exec;
+            mQueuedOn.execute(mCore, mPriority);
+        } else {
+            exec.execute(mCore);
+        }
 
         return this;
     }
@@ -443,49 +554,217 @@ public abstract class ModernAsyncTask<Params, Progress, Result> {
      */
     protected final void publishProgress(Progress... values) {
         if (!isCancelled()) {
-            sHandler.obtainMessage(MESSAGE_POST_PROGRESS,
-                    new AsyncTaskResult<Progress>(this, values)).sendToTarget();
+            boolean post;
+            synchronized (mCore) {
+                if (mPendingProgress == null) {
+                    mPendingProgress = new ArrayList<Progress[]>(2);
+                }
+                // A message is already on its way if the queue is not empty.
+                post = mPendingProgress.isEmpty();
+                mPendingProgress.add(values);
+            }
+            if (post) {
+                if (mDelivery != null) {
+                    mDelivery.execute(new Runnable() {
+                        public void run() {
+                            dispatchProgress();
+                        }
+                    });
+                } else {
+                    sHandler.obtainMessage(MESSAGE_POST_PROGRESS, this).sendToTarget();
+                }
+            }
         }
     }
 
-    private void finish(Result result) {
-        if (isCancelled()) {
-            onCancelled(result);
-        } else {
-            onPostExecute(result);
+    private void dispatchProgress() {
+        while (true) {
+            Progress[] values;
+            synchronized (mCore) {
+                if (mPendingProgress.isEmpty()) {
+                    return;
+                }
+                values = mPendingProgress.remove(0);
+            }
+            onProgressUpdate(values);
+        }
+    }
+
+    private void finish() {
+        try {
+            if (isCancelled()) {
+                onCancelled(mResult);
+            } else {
+                onPostExecute(mResult);
+            }
+        } finally {
+            synchronized (mCore) {
+                mStatus = Status.FINISHED;
+                mCore.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * The part of the task that is run by the executor.  It holds the
+     * task's state in place of a FutureTask, so a task costs one object
+     * beyond itself, and its messages to the UI thread carry the task alone.
+     */
+    private final class Core extends AtomicInteger implements Runnable {
+        private static final long serialVersionUID = 3204846597237925617L;
+
+        volatile Thread mRunner;
+        // Priority and order of submission to PRIORITY_EXECUTOR.
+        int mQueuedPriority;
+        long mSequence;
+
+        public void run() {
+            if (!compareAndSet(STATE_PENDING, STATE_RUNNING)) {
+                // Cancelled before it started; the result has been posted.
+                return;
+            }
+            mRunner = Thread.currentThread();
+            if (mDelivery == null) {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            }
+            Throwable exception = null;
+            try {
+                mResult = doInBackground(mParams);
+            } catch (Throwable t) {
+                exception = t;
+            }
+            mRunner = null;
+            boolean completed;
+            synchronized (this) {
+                mException = exception;
+                completed = compareAndSet(STATE_RUNNING, STATE_COMPLETED);
+                notifyAll();
+            }
+            // A failure after cancel() is reported as the cancellation alone.
+            if (exception != null && completed) {
+                throw new RuntimeException("An error occured while executing doInBackground()",
+                        exception);
+            }
+            postResult();
+        }
+
+        boolean cancel(boolean mayInterruptIfRunning) {
+            while (true) {
+                int state = get();
+                if (state >= STATE_COMPLETED) {
+                    return false;
+                }
+                if (compareAndSet(state, STATE_CANCELLED)) {
+                    if (state == STATE_PENDING) {
+                        // doInBackground() will never run, so finish now.
+                        postResult();
+                    } else if (mayInterruptIfRunning) {
+                        Thread runner = mRunner;
+                        if (runner != null) {
+                            runner.interrupt();
+                        }
+                    }
+                    synchronized (this) {
+                        notifyAll();
+                    }
+                    return true;
+                }
+            }
         }
-        mStatus = Status.FINISHED;
     }
 
     private static class InternalHandler extends Handler {
-        @SuppressWarnings({"unchecked", "rawtypes"})
+        @SuppressWarnings("rawtypes")
         @Override
         public void handleMessage(Message msg) {
-            AsyncTaskResult result = (AsyncTaskResult) msg.obj;
+            ModernAsyncTask task = (ModernAsyncTask) msg.obj;
             switch (msg.what) {
                 case MESSAGE_POST_RESULT:
-                    // There is only one result
-                    result.mTask.finish(result.mData[0]);
+                    task.finish();
                     break;
                 case MESSAGE_POST_PROGRESS:
-                    result.mTask.onProgressUpdate(result.mData);
+                    task.dispatchProgress();
                     break;
             }
         }
     }
 
-    private static abstract class WorkerRunnable<Params, Result> implements Callable<Result> {
-        Params[] mParams;
+    private static class PriorityExecutor implements Executor {
+        private final AtomicLong mSequence = new AtomicLong();
+        private final ThreadPoolExecutor mPool = new ThreadPoolExecutor(
+                PRIORITY_POOL_SIZE, PRIORITY_POOL_SIZE, KEEP_ALIVE, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(11, PRIORITY_ORDER), sThreadFactory);
+
+        public void execute(Runnable runnable) {
+            execute(runnable, PRIORITY_DEFAULT);
+        }
+
+        @SuppressWarnings("rawtypes")
+        void execute(Runnable runnable, int priority) {
+            if (runnable instanceof ModernAsyncTask.Core) {
+                // Tasks have room for their own ordering; no need to wrap them.
+                ModernAsyncTask.Core core = (ModernAsyncTask.Core) runnable;
+                core.mQueuedPriority = priority;
+                core.mSequence = mSequence.getAndIncrement();
+                mPool.execute(core);
+            } else {
+                mPool.execute(new PrioritizedRunnable(runnable, priority,
+                        mSequence.getAndIncrement()));
+            }
+        }
+
+        @SuppressWarnings("rawtypes")
+        void requeue(ModernAsyncTask.Core core, int priority) {
+            // If the core has already been taken by a thread it is too late.
+            if (core.mQueuedPriority != priority && mPool.remove(core)) {
+                execute(core, priority);
+            }
+        }
+
+        boolean isBusy() {
+            return mPool.getActiveCount() + mPool.getQueue().size() >= PRIORITY_POOL_SIZE;
+        }
     }
 
-    @SuppressWarnings({"rawtypes"})
-    private static class AsyncTaskResult<Data> {
-        final ModernAsyncTask mTask;
-        final Data[] mData;
+    @SuppressWarnings("rawtypes")
+    private static final Comparator<Runnable> PRIORITY_ORDER = new Comparator<Runnable>() {
+        public int compare(Runnable a, Runnable b) {
+            int pa, pb;
+            long sa, sb;
+            if (a instanceof ModernAsyncTask.Core) {
+                pa = ((ModernAsyncTask.Core) a).mQueuedPriority;
+                sa = ((ModernAsyncTask.Core) a).mSequence;
+            } else {
+                pa = ((PrioritizedRunnable) a).mPriority;
+                sa = ((PrioritizedRunnable) a).mSequence;
+            }
+            if (b instanceof ModernAsyncTask.Core) {
+                pb = ((ModernAsyncTask.Core) b).mQueuedPriority;
+                sb = ((ModernAsyncTask.Core) b).mSequence;
+            } else {
+                pb = ((PrioritizedRunnable) b).mPriority;
+                sb = ((PrioritizedRunnable) b).mSequence;
+            }
+            if (pa != pb) {
+                return pa > pb ? -1 : 1;
+            }
+            return sa < sb ? -1 : (sa == sb ? 0 : 1);
+        }
+    };
+
+    private static class PrioritizedRunnable implements Runnable {
+        final Runnable mRunnable;
+        final int mPriority;
+        final long mSequence;
+
+        PrioritizedRunnable(Runnable runnable, int priority, long sequence) {
+            mRunnable = runnable;
+            mPriority = priority;
+            mSequence = sequence;
+        }
 
-        AsyncTaskResult(ModernAsyncTask task, Data... data) {
-            mTask = task;
-            mData = data;
+        public void run() {
+            mRunnable.run();
         }
     }
 }
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2012 Jake Wharton
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.content;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+
+/**
+ * An {@link AsyncTaskLoader} that can deliver its result a piece at a time.
+ * While loading, {@link #loadInBackground()} hands each batch it has
+ * produced to {@link #publishPartialResult}; on the main thread the batches
+ * are merged by {@link #mergePartialResult} and the merged result so far is
+ * delivered like any other result, reaching
+ * {@link android.support.v4.app.LoaderManager.LoaderCallbacks#onLoadFinished}.
+ * The value returned by {@link #loadInBackground()} is delivered last as the
+ * complete result.  This lets a large list show its first entries long
+ * before all of them are loaded.
+ *
+ * <p>Use {@link #isPartialResult()} to tell a partial delivery from the
+ * complete one.
+ */
+public abstract class ProgressiveLoader<D> extends AsyncTaskLoader<D> {
+    // The merged partial results of the current load.
+    D mPartialResult;
+
+    public ProgressiveLoader(Context context) {
+        super(context);
+    }
+
+    /**
+     * Publish a batch of results.  Must be called from
+     * {@link #loadInBackground()}, on its worker thread.  Batches of a load
+     * that has since been cancelled or replaced are dropped.
+     */
+    protected final void publishPartialResult(D batch) {
+        LoadTask task = mRunningTask;
+        if (task != null && !task.isCancelled()) {
+            task.publishPartialResult(batch);
+        }
+    }
+
+    /**
+     * Merge a batch published by {@link #publishPartialResult} into the
+     * partial result delivered so far, and return the new partial result.
+     * Called on the main thread.  The previous result may still be in use
+     * by the client, so a new object must be returned rather than
+     * <var>current</var> being modified.
+     *
+     * @param current The partial result so far, or null for the first batch.
+     * @param batch The batch to add.
+     */
+    protected abstract D mergePartialResult(D current, D batch);
+
+    /**
+     * Return true if the last result delivered was a partial one, and the
+     * load that produced it is still running.
+     */
+    public boolean isPartialResult() {
+        return mPartialResult != null;
+    }
+
+    /**
+     * Partial results are delivered like the complete one, so none of this
+     * loader's results are cached, rather than the cache handing out a
+     * result that is still being built.
+     */
+    @Override
+    public final boolean isResultCacheable() {
+        return false;
+    }
+
+    @Override
+    protected void onForceLoad() {
+        mPartialResult = null;
+        super.onForceLoad();
+    }
+
+    @Override
+    void dispatchOnPartialResult(LoadTask task, D data) {
+        if (mTask != task || task.isCancelled() || isAbandoned() || isReset()) {
+            if (DEBUG) Log.v(TAG, "Dropping partial result of old task");
+            return;
+        }
+        mPartialResult = mergePartialResult(mPartialResult, data);
+        if (isStarted()) {
+            deliverResult(mPartialResult);
+        }
+    }
+
+    @Override
+    void dispatchOnLoadComplete(LoadTask task, D data) {
+        if (mTask == task) {
+            mPartialResult = null;
+        }
+        super.dispatchOnLoadComplete(task, data);
+    }
+
+    @Override
+    void dispatchOnCancelled(LoadTask task, D data) {
+        if (mTask == null) {
+            mPartialResult = null;
+        }
+        super.dispatchOnCancelled(task, data);
+    }
+
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        if (mPartialResult != null) {
+            writer.print(prefix); writer.print("mPartialResult="); writer.println(mPartialResult);
+        }
+    }
+}
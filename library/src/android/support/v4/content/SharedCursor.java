@@ -0,0 +1,249 @@
+/*
+ * Copyright 2012 Jake Wharton
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.content;
+
+import android.database.CharArrayBuffer;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.database.DataSetObserver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One of several references to a cursor that is shared by loaders whose
+ * loads were coalesced.  Each reference has its own position and can be
+ * closed on its own; the shared cursor is closed with the last reference.
+ * References must all be used from the same thread.
+ */
+final class SharedCursor extends CursorWrapper {
+    private final Cursor mBase;
+    private final int[] mReferences;
+    private final ArrayList<ContentObserver> mContentObservers
+            = new ArrayList<ContentObserver>();
+    private final ArrayList<DataSetObserver> mDataSetObservers
+            = new ArrayList<DataSetObserver>();
+    private int mPos = -1;
+    private boolean mClosed;
+
+    private SharedCursor(Cursor base, int[] references) {
+        super(base);
+        mBase = base;
+        mReferences = references;
+    }
+
+    /**
+     * Return <var>count</var> independent references to <var>cursor</var>,
+     * which is then owned by them.
+     */
+    static List<Cursor> share(Cursor cursor, int count) {
+        final int[] references = new int[] { count };
+        ArrayList<Cursor> cursors = new ArrayList<Cursor>(count);
+        for (int i=0; i<count; i++) {
+            cursors.add(new SharedCursor(cursor, references));
+        }
+        return cursors;
+    }
+
+    private void sync() {
+        if (mBase.getPosition() != mPos) {
+            mBase.moveToPosition(mPos);
+        }
+    }
+
+    @Override
+    public int getPosition() {
+        return mPos;
+    }
+
+    @Override
+    public boolean moveToPosition(int position) {
+        final int count = getCount();
+        if (position >= count) {
+            mPos = count;
+            return false;
+        }
+        if (position < 0) {
+            mPos = -1;
+            return false;
+        }
+        mPos = position;
+        return true;
+    }
+
+    @Override
+    public boolean move(int offset) {
+        return moveToPosition(mPos + offset);
+    }
+
+    @Override
+    public boolean moveToFirst() {
+        return moveToPosition(0);
+    }
+
+    @Override
+    public boolean moveToLast() {
+        return moveToPosition(getCount() - 1);
+    }
+
+    @Override
+    public boolean moveToNext() {
+        return moveToPosition(mPos + 1);
+    }
+
+    @Override
+    public boolean moveToPrevious() {
+        return moveToPosition(mPos - 1);
+    }
+
+    @Override
+    public boolean isFirst() {
+        return mPos == 0 && getCount() != 0;
+    }
+
+    @Override
+    public boolean isLast() {
+        final int count = getCount();
+        return mPos == (count - 1) && count != 0;
+    }
+
+    @Override
+    public boolean isBeforeFirst() {
+        return getCount() == 0 || mPos == -1;
+    }
+
+    @Override
+    public boolean isAfterLast() {
+        final int count = getCount();
+        return count == 0 || mPos == count;
+    }
+
+    @Override
+    public byte[] getBlob(int columnIndex) {
+        sync();
+        return mBase.getBlob(columnIndex);
+    }
+
+    @Override
+    public String getString(int columnIndex) {
+        sync();
+        return mBase.getString(columnIndex);
+    }
+
+    @Override
+    public void copyStringToBuffer(int columnIndex, CharArrayBuffer buffer) {
+        sync();
+        mBase.copyStringToBuffer(columnIndex, buffer);
+    }
+
+    @Override
+    public short getShort(int columnIndex) {
+        sync();
+        return mBase.getShort(columnIndex);
+    }
+
+    @Override
+    public int getInt(int columnIndex) {
+        sync();
+        return mBase.getInt(columnIndex);
+    }
+
+    @Override
+    public long getLong(int columnIndex) {
+        sync();
+        return mBase.getLong(columnIndex);
+    }
+
+    @Override
+    public float getFloat(int columnIndex) {
+        sync();
+        return mBase.getFloat(columnIndex);
+    }
+
+    @Override
+    public double getDouble(int columnIndex) {
+        sync();
+        return mBase.getDouble(columnIndex);
+    }
+
+    @Override
+    public int getType(int columnIndex) {
+        sync();
+        return mBase.getType(columnIndex);
+    }
+
+    @Override
+    public boolean isNull(int columnIndex) {
+        sync();
+        return mBase.isNull(columnIndex);
+    }
+
+    @Override
+    public void registerContentObserver(ContentObserver observer) {
+        mContentObservers.add(observer);
+        mBase.registerContentObserver(observer);
+    }
+
+    @Override
+    public void unregisterContentObserver(ContentObserver observer) {
+        if (mContentObservers.remove(observer)) {
+            mBase.unregisterContentObserver(observer);
+        }
+    }
+
+    @Override
+    public void registerDataSetObserver(DataSetObserver observer) {
+        mDataSetObservers.add(observer);
+        mBase.registerDataSetObserver(observer);
+    }
+
+    @Override
+    public void unregisterDataSetObserver(DataSetObserver observer) {
+        if (mDataSetObservers.remove(observer)) {
+            mBase.unregisterDataSetObserver(observer);
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        return mClosed || mBase.isClosed();
+    }
+
+    @Override
+    public void close() {
+        if (mClosed) {
+            return;
+        }
+        mClosed = true;
+        for (int i=mContentObservers.size()-1; i>=0; i--) {
+            mBase.unregisterContentObserver(mContentObservers.get(i));
+        }
+        mContentObservers.clear();
+        for (int i=mDataSetObservers.size()-1; i>=0; i--) {
+            mBase.unregisterDataSetObserver(mDataSetObservers.get(i));
+        }
+        mDataSetObservers.clear();
+        final boolean last;
+        synchronized (mReferences) {
+            last = --mReferences[0] == 0;
+        }
+        if (last) {
+            mBase.close();
+        }
+    }
+}
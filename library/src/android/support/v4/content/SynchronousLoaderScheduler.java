@@ -0,0 +1,146 @@
+/*
+ * Copyright 2012 Jake Wharton
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.content;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.Executor;
+
+/**
+ * A {@link LoaderScheduler} that does everything on the calling thread
+ * without a looper.  Loads run as soon as they are started; deliveries are
+ * queued until {@link #runPending()} is called, and delayed posts until
+ * {@link #advanceBy(long)} has moved its clock past them.  The order of
+ * events is thus fully determined by the caller, which suits tests and
+ * benchmarks of the load pipeline.
+ *
+ * <p>It is not thread safe: the loaders using it and its own methods must
+ * all be called from one thread.
+ */
+public class SynchronousLoaderScheduler implements LoaderScheduler {
+    static final class Delayed {
+        final Runnable runnable;
+        final long when;
+
+        Delayed(Runnable runnable, long when) {
+            this.runnable = runnable;
+            this.when = when;
+        }
+    }
+
+    private final LinkedList<Runnable> mPending = new LinkedList<Runnable>();
+    // Sorted by time, and by order of posting for equal times.
+    private final ArrayList<Delayed> mDelayed = new ArrayList<Delayed>();
+    private long mNow;
+
+    private final Executor mLoadExecutor = new Executor() {
+        public void execute(Runnable runnable) {
+            runnable.run();
+        }
+    };
+
+    private final Executor mDeliveryExecutor = new Executor() {
+        public void execute(Runnable runnable) {
+            mPending.add(runnable);
+        }
+    };
+
+    public Executor getLoadExecutor() {
+        return mLoadExecutor;
+    }
+
+    public Executor getDeliveryExecutor() {
+        return mDeliveryExecutor;
+    }
+
+    public void postDelayed(Runnable runnable, long delayMillis) {
+        if (delayMillis <= 0) {
+            mPending.add(runnable);
+            return;
+        }
+        final long when = mNow + delayMillis;
+        int i = mDelayed.size();
+        while (i > 0 && mDelayed.get(i-1).when > when) {
+            i--;
+        }
+        mDelayed.add(i, new Delayed(runnable, when));
+    }
+
+    public void removeCallbacks(Runnable runnable) {
+        for (Iterator<Runnable> it = mPending.iterator(); it.hasNext(); ) {
+            if (it.next() == runnable) {
+                it.remove();
+            }
+        }
+        for (int i = mDelayed.size()-1; i >= 0; i--) {
+            if (mDelayed.get(i).runnable == runnable) {
+                mDelayed.remove(i);
+            }
+        }
+    }
+
+    /**
+     * Return the time its clock has been moved to by {@link #advanceBy}.
+     * It starts at 0.
+     */
+    public long uptimeMillis() {
+        return mNow;
+    }
+
+    /**
+     * Run queued deliveries, including any they queue in turn, until none
+     * are left.
+     *
+     * @return The number of runnables run.
+     */
+    public int runPending() {
+        int count = 0;
+        while (!mPending.isEmpty()) {
+            mPending.removeFirst().run();
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Move the clock forward by <var>millis</var>, running delayed posts as
+     * their time comes and everything they queue.
+     *
+     * @return The number of runnables run.
+     */
+    public int advanceBy(long millis) {
+        final long target = mNow + millis;
+        int count = runPending();
+        while (!mDelayed.isEmpty() && mDelayed.get(0).when <= target) {
+            Delayed next = mDelayed.remove(0);
+            mNow = next.when;
+            next.runnable.run();
+            count++;
+            count += runPending();
+        }
+        mNow = target;
+        return count;
+    }
+
+    /**
+     * Return true if nothing is queued or waiting for its time.
+     */
+    public boolean isIdle() {
+        return mPending.isEmpty() && mDelayed.isEmpty();
+    }
+}
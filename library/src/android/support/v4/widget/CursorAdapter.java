@@ -21,6 +21,7 @@ import android.database.ContentObserver;
 import android.database.Cursor;
 import android.database.DataSetObserver;
 import android.os.Handler;
+import android.support.v4.content.CursorLoader;
 import android.util.Log;
 import android.view.View;
 import android.view.ViewGroup;
@@ -84,6 +85,8 @@ public abstract class CursorAdapter extends BaseAdapter implements Filterable,
      */
     protected FilterQueryProvider mFilterQueryProvider;
 
+    private CursorLoader mPagedLoader;
+
     /**
      * If set the adapter will call requery() on the cursor whenever a content change
      * notification is delivered. Implies {@link #FLAG_REGISTER_CONTENT_OBSERVER}.
@@ -254,6 +257,9 @@ public abstract class CursorAdapter extends BaseAdapter implements Filterable,
             v = convertView;
         }
         bindView(v, mContext, mCursor);
+        if (mPagedLoader != null) {
+            mPagedLoader.onRowShown(position);
+        }
         return v;
     }
 
@@ -420,6 +426,18 @@ public abstract class CursorAdapter extends BaseAdapter implements Filterable,
         return mFilterQueryProvider;
     }
 
+    /**
+     * Set a loader in paged mode (see {@link CursorLoader#setPageSize(int)})
+     * that supplies this adapter's cursors.  As rows near the end of the
+     * loaded ones are shown, the loader is asked for the next page; swap in
+     * the cursor it delivers with {@link #swapCursor(Cursor)} as usual.
+     *
+     * @param loader The loader, or null to stop requesting pages.
+     */
+    public void setPagedLoader(CursorLoader loader) {
+        mPagedLoader = loader;
+    }
+
     /**
      * Sets the query filter provider used to filter the current Cursor.
      * The provider's
@@ -37,8 +37,8 @@ import android.support.v4.app.FragmentActivity;
 import android.support.v4.app.FragmentManager;
 import android.support.v4.app.ListFragment;
 import android.support.v4.app.LoaderManager;
-import android.support.v4.content.AsyncTaskLoader;
 import android.support.v4.content.Loader;
+import android.support.v4.content.ProgressiveLoader;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -194,9 +194,13 @@ public class LoaderCustomSupport extends FragmentActivity {
     }
 
     /**
-     * A custom Loader that loads all of the installed applications.
+     * A custom Loader that loads all of the installed applications.  The
+     * entries are published in batches as their labels are loaded, so the
+     * list starts filling in before every label has been read.
      */
-    public static class AppListLoader extends AsyncTaskLoader<List<AppEntry>> {
+    public static class AppListLoader extends ProgressiveLoader<List<AppEntry>> {
+        static final int BATCH_SIZE = 16;
+
         final InterestingConfigChanges mLastConfig = new InterestingConfigChanges();
         final PackageManager mPm;
 
@@ -230,10 +234,18 @@ public class LoaderCustomSupport extends FragmentActivity {
 
             // Create corresponding array of entries and load their labels.
             List<AppEntry> entries = new ArrayList<AppEntry>(apps.size());
+            List<AppEntry> batch = new ArrayList<AppEntry>(BATCH_SIZE);
             for (int i=0; i<apps.size(); i++) {
                 AppEntry entry = new AppEntry(this, apps.get(i));
                 entry.loadLabel(context);
                 entries.add(entry);
+                batch.add(entry);
+                if (batch.size() == BATCH_SIZE) {
+                    // Let the list show what we have so far.
+                    Collections.sort(batch, ALPHA_COMPARATOR);
+                    publishPartialResult(batch);
+                    batch = new ArrayList<AppEntry>(BATCH_SIZE);
+                }
             }
 
             // Sort the list.
@@ -243,6 +255,29 @@ public class LoaderCustomSupport extends FragmentActivity {
             return entries;
         }
 
+        /**
+         * Called on the main thread to add a sorted batch of entries to
+         * those already shown.
+         */
+        @Override protected List<AppEntry> mergePartialResult(List<AppEntry> current,
+                List<AppEntry> batch) {
+            if (current == null) {
+                return batch;
+            }
+            List<AppEntry> merged = new ArrayList<AppEntry>(current.size() + batch.size());
+            int i = 0, j = 0;
+            while (i < current.size() && j < batch.size()) {
+                if (ALPHA_COMPARATOR.compare(current.get(i), batch.get(j)) <= 0) {
+                    merged.add(current.get(i++));
+                } else {
+                    merged.add(batch.get(j++));
+                }
+            }
+            merged.addAll(current.subList(i, current.size()));
+            merged.addAll(batch.subList(j, batch.size()));
+            return merged;
+        }
+
         /**
          * Called when there is new data to deliver to the client.  The
          * super class will take care of delivering it; the implementation
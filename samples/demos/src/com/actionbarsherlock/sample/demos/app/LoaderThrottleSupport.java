@@ -502,7 +502,9 @@ public class LoaderThrottleSupport extends FragmentActivity {
         public Loader<Cursor> onCreateLoader(int id, Bundle args) {
             CursorLoader cl = new CursorLoader(getActivity(), MainTable.CONTENT_URI,
                     PROJECTION, null, null, null);
-            cl.setUpdateThrottle(2000); // update at most every 2 seconds.
+            // Throttle updates by how long queries take, but never by more
+            // than 2 seconds.
+            cl.setAdaptiveUpdateThrottle(0, 2000);
             return cl;
         }
 
@@ -0,0 +1,35 @@
+package com.actionbarsherlock.tests.app;
+
+import java.util.concurrent.CountDownLatch;
+import android.os.Bundle;
+import android.support.v4.app.FragmentActivity;
+
+/**
+ * Base of the benchmark activities: a blank layout, and a way for the
+ * test thread to run a measurement on the UI thread.
+ */
+public abstract class BenchmarkActivity extends FragmentActivity {
+	@Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.blank);
+    }
+
+	/**
+	 * Run <var>measurement</var> on the UI thread and wait for it to return.
+	 */
+	protected final void runOnUiThreadAndWait(final Runnable measurement) throws InterruptedException {
+		final CountDownLatch latch = new CountDownLatch(1);
+		runOnUiThread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					measurement.run();
+				} finally {
+					latch.countDown();
+				}
+			}
+		});
+		latch.await();
+	}
+}
@@ -0,0 +1,72 @@
+package com.actionbarsherlock.tests.app;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.v4.content.LocalBroadcastManager;
+
+public final class BenchmarkBroadcastDispatch extends BenchmarkActivity {
+	public static final String ACTION = "com.actionbarsherlock.tests.app.BENCHMARK";
+	public static final int REGISTRATIONS = 1000;
+	public static final int SCHEMES = 100;
+	public static final int MATCHING = REGISTRATIONS / SCHEMES;
+
+	public int received;
+
+	private final BroadcastReceiver[] receivers = new BroadcastReceiver[REGISTRATIONS];
+
+	@Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+
+        // Many receivers on one hot action, told apart by their data scheme.
+        LocalBroadcastManager manager = LocalBroadcastManager.getInstance(this);
+        for (int i = 0; i < REGISTRATIONS; i++) {
+        	IntentFilter filter = new IntentFilter(ACTION);
+        	filter.addDataScheme("scheme" + (i % SCHEMES));
+        	receivers[i] = new BroadcastReceiver() {
+        		@Override
+        		public void onReceive(Context context, Intent intent) {
+        			received++;
+        		}
+        	};
+        	manager.registerReceiver(receivers[i], filter);
+        }
+    }
+
+	@Override
+	protected void onDestroy() {
+		super.onDestroy();
+		LocalBroadcastManager manager = LocalBroadcastManager.getInstance(this);
+		for (int i = 0; i < REGISTRATIONS; i++) {
+			manager.unregisterReceiver(receivers[i]);
+		}
+	}
+
+	/**
+	 * Send <var>broadcasts</var> broadcasts that each match {@link #MATCHING}
+	 * of the registered receivers, delivering them synchronously.
+	 *
+	 * @return The average time of a broadcast in nanoseconds.
+	 */
+	public long measureBroadcasts(final int broadcasts) throws InterruptedException {
+		final long[] result = new long[1];
+		runOnUiThreadAndWait(new Runnable() {
+			@Override
+			public void run() {
+				LocalBroadcastManager manager = LocalBroadcastManager.getInstance(BenchmarkBroadcastDispatch.this);
+				Intent intent = new Intent(ACTION, Uri.parse("scheme7://item/1"));
+				received = 0;
+				long start = System.nanoTime();
+				for (int i = 0; i < broadcasts; i++) {
+					manager.sendBroadcastSync(intent);
+				}
+				result[0] = (System.nanoTime() - start) / broadcasts;
+			}
+		});
+		return result[0];
+	}
+}
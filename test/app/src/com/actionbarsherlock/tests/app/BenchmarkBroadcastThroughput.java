@@ -0,0 +1,101 @@
+package com.actionbarsherlock.tests.app;
+
+import java.util.concurrent.CountDownLatch;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Bundle;
+import android.os.Handler;
+import android.support.v4.content.LocalBroadcastManager;
+
+public final class BenchmarkBroadcastThroughput extends BenchmarkActivity {
+	public static final String ACTION_PROGRESS = "com.actionbarsherlock.tests.app.PROGRESS";
+	public static final String ACTION_CHURN = "com.actionbarsherlock.tests.app.CHURN";
+
+	public int received;
+
+	private final BroadcastReceiver progressReceiver = new BroadcastReceiver() {
+		@Override
+		public void onReceive(Context context, Intent intent) {
+			received++;
+		}
+	};
+
+	private final Handler handler = new Handler();
+	private volatile boolean churning;
+
+	/** Registers and unregisters a receiver on the UI thread while the senders run. */
+	private final Runnable churn = new Runnable() {
+		private final BroadcastReceiver receiver = new BroadcastReceiver() {
+			@Override
+			public void onReceive(Context context, Intent intent) {
+			}
+		};
+
+		@Override
+		public void run() {
+			if (churning) {
+				LocalBroadcastManager manager = LocalBroadcastManager.getInstance(BenchmarkBroadcastThroughput.this);
+				manager.registerReceiver(receiver, new IntentFilter(ACTION_CHURN));
+				manager.unregisterReceiver(receiver);
+				handler.post(this);
+			}
+		}
+	};
+
+	@Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+
+        LocalBroadcastManager.getInstance(this).registerReceiver(progressReceiver,
+        		new IntentFilter(ACTION_PROGRESS));
+    }
+
+	@Override
+	protected void onDestroy() {
+		super.onDestroy();
+		LocalBroadcastManager.getInstance(this).unregisterReceiver(progressReceiver);
+	}
+
+	/**
+	 * Send <var>broadcasts</var> broadcasts from each of <var>threads</var>
+	 * background threads at once, while the UI thread keeps registering and
+	 * unregistering a receiver.
+	 *
+	 * @return The number of broadcasts sent per second, over all threads.
+	 */
+	public long measureThroughput(int threads, final int broadcasts) throws InterruptedException {
+		final LocalBroadcastManager manager = LocalBroadcastManager.getInstance(this);
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(threads);
+		for (int i = 0; i < threads; i++) {
+			new Thread("Sender " + i) {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						Intent intent = new Intent(ACTION_PROGRESS);
+						for (int j = 0; j < broadcasts; j++) {
+							manager.sendBroadcast(intent);
+						}
+					} catch (InterruptedException e) {
+						// Fall through and count down.
+					} finally {
+						done.countDown();
+					}
+				}
+			}.start();
+		}
+
+		churning = true;
+		handler.post(churn);
+		long begin = System.nanoTime();
+		start.countDown();
+		done.await();
+		long elapsed = System.nanoTime() - begin;
+		churning = false;
+
+		return threads * (long)broadcasts * 1000000000L / Math.max(1, elapsed);
+	}
+}
@@ -0,0 +1,72 @@
+package com.actionbarsherlock.tests.app;
+
+import java.util.concurrent.CountDownLatch;
+import android.content.Context;
+import android.os.Debug;
+import android.support.v4.content.AsyncTaskLoader;
+import android.support.v4.content.Loader;
+
+public final class BenchmarkLoaderAllocation extends BenchmarkActivity {
+	public static final int WARMUP_LOADS = 20;
+
+	private static final Integer RESULT = Integer.valueOf(42);
+
+	/** Loader whose load does no work, so only the loading machinery allocates. */
+	public static final class EmptyLoader extends AsyncTaskLoader<Integer> {
+		public EmptyLoader(Context context) {
+			super(context);
+		}
+
+		@Override
+		public Integer loadInBackground() {
+			return RESULT;
+		}
+	}
+
+	public int completedLoads;
+
+	/**
+	 * Run <var>loads</var> loads back to back, each started when the
+	 * previous one is delivered.
+	 *
+	 * @return The average number of objects and bytes allocated per load,
+	 *         across all threads.
+	 */
+	public long[] measureAllocations(final int loads) throws InterruptedException {
+		final long[] result = new long[2];
+		final CountDownLatch latch = new CountDownLatch(1);
+		runOnUiThread(new Runnable() {
+			@Override
+			public void run() {
+				final EmptyLoader loader = new EmptyLoader(BenchmarkLoaderAllocation.this);
+				loader.registerListener(0, new Loader.OnLoadCompleteListener<Integer>() {
+					private int count;
+
+					@Override
+					public void onLoadComplete(Loader<Integer> l, Integer data) {
+						count++;
+						if (count == WARMUP_LOADS) {
+							Debug.resetGlobalAllocCount();
+							Debug.resetGlobalAllocSize();
+							Debug.startAllocCounting();
+						} else if (count == WARMUP_LOADS + loads) {
+							Debug.stopAllocCounting();
+							result[0] = Debug.getGlobalAllocCount() / loads;
+							result[1] = Debug.getGlobalAllocSize() / loads;
+							completedLoads = count - WARMUP_LOADS;
+							loader.unregisterListener(this);
+							loader.reset();
+							latch.countDown();
+							return;
+						}
+						loader.forceLoad();
+					}
+				});
+				loader.startLoading();
+				loader.forceLoad();
+			}
+		});
+		latch.await();
+		return result;
+	}
+}
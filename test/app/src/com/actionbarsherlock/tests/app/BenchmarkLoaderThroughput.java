@@ -0,0 +1,52 @@
+package com.actionbarsherlock.tests.app;
+
+import android.content.Context;
+import android.support.v4.content.AsyncTaskLoader;
+import android.support.v4.content.Loader;
+import android.support.v4.content.SynchronousLoaderScheduler;
+
+public final class BenchmarkLoaderThroughput extends BenchmarkActivity {
+	/** Loader whose load does no work, so only the loading pipeline is measured. */
+	public static final class EmptyLoader extends AsyncTaskLoader<Integer> {
+		public EmptyLoader(Context context) {
+			super(context);
+		}
+
+		@Override
+		public Integer loadInBackground() {
+			return 42;
+		}
+	}
+
+	public int deliveredLoads;
+
+	/**
+	 * Run <var>loads</var> loads back to back on a
+	 * {@link SynchronousLoaderScheduler}, entirely on the calling thread.
+	 *
+	 * @return The average time of a load, from start to delivery, in nanoseconds.
+	 */
+	public long measureSynchronousLoads(int loads) {
+		SynchronousLoaderScheduler scheduler = new SynchronousLoaderScheduler();
+		EmptyLoader loader = new EmptyLoader(this);
+		loader.setScheduler(scheduler);
+		deliveredLoads = 0;
+		loader.registerListener(0, new Loader.OnLoadCompleteListener<Integer>() {
+			@Override
+			public void onLoadComplete(Loader<Integer> l, Integer data) {
+				deliveredLoads++;
+			}
+		});
+		loader.startLoading();
+
+		long start = System.nanoTime();
+		for (int i = 0; i < loads; i++) {
+			loader.forceLoad();
+			scheduler.runPending();
+		}
+		long elapsed = System.nanoTime() - start;
+
+		loader.reset();
+		return elapsed / loads;
+	}
+}
@@ -0,0 +1,148 @@
+package com.actionbarsherlock.tests.app;
+
+import android.app.Instrumentation;
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.Parcel;
+import android.support.v4.app.Fragment;
+import android.support.v4.app.FragmentManager;
+
+public final class BenchmarkSavedState extends BenchmarkActivity {
+	public static final int BACK_STACK_DEPTH = 50;
+	static final String ARG_INDEX = "index";
+
+	// State for the next instance to restore from, in place of its own.
+	private static Bundle sRestoreState;
+
+	public static final class DetailFragment extends Fragment {
+	}
+
+	@Override
+    public void onCreate(Bundle savedInstanceState) {
+        if (sRestoreState != null) {
+        	savedInstanceState = sRestoreState;
+        	sRestoreState = null;
+        }
+        super.onCreate(savedInstanceState);
+
+        if (savedInstanceState == null) {
+        	FragmentManager fm = getSupportFragmentManager();
+        	for (int i = 0; i < BACK_STACK_DEPTH; i++) {
+        		Fragment fragment = new DetailFragment();
+        		Bundle args = new Bundle();
+        		args.putInt(ARG_INDEX, i);
+        		fragment.setArguments(args);
+        		fm.beginTransaction()
+        		  .replace(android.R.id.content, fragment, "detail" + i)
+        		  .setBreadCrumbTitle("Detail " + (i % 5))
+        		  .addToBackStack("detail" + (i % 5))
+        		  .commit();
+        	}
+        }
+    }
+
+	/**
+	 * Launch a new instance restored from <var>state</var>, and wait for it
+	 * to be resumed.
+	 */
+	public static BenchmarkSavedState restore(Instrumentation instrumentation, Bundle state) {
+		sRestoreState = state;
+		Intent intent = new Intent(Intent.ACTION_MAIN);
+		intent.setClassName(instrumentation.getTargetContext(), BenchmarkSavedState.class.getName());
+		intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+		return (BenchmarkSavedState)instrumentation.startActivitySync(intent);
+	}
+
+	/**
+	 * Save the activity state and read it back from a parcel, as the system
+	 * does when the process is killed.
+	 */
+	public Bundle saveAndParcel(final boolean compact) throws InterruptedException {
+		final Bundle[] result = new Bundle[1];
+		runOnUiThreadAndWait(new Runnable() {
+			@Override
+			public void run() {
+				getSupportFragmentManager().executePendingTransactions();
+				FragmentManager.enableCompactSavedState(compact);
+				Parcel parcel = Parcel.obtain();
+				try {
+					Bundle state = new Bundle();
+					onSaveInstanceState(state);
+					state.writeToParcel(parcel, 0);
+					parcel.setDataPosition(0);
+					result[0] = parcel.readBundle(getClassLoader());
+				} finally {
+					parcel.recycle();
+					FragmentManager.enableCompactSavedState(false);
+				}
+			}
+		});
+		return result[0];
+	}
+
+	/**
+	 * Describe the back stack and every fragment on it.
+	 */
+	public String describeState() throws InterruptedException {
+		final StringBuilder result = new StringBuilder();
+		runOnUiThreadAndWait(new Runnable() {
+			@Override
+			public void run() {
+				FragmentManager fm = getSupportFragmentManager();
+				fm.executePendingTransactions();
+				for (int i = 0; i < fm.getBackStackEntryCount(); i++) {
+					FragmentManager.BackStackEntry entry = fm.getBackStackEntryAt(i);
+					result.append("entry ").append(entry.getId())
+					      .append(' ').append(entry.getName())
+					      .append(' ').append(entry.getBreadCrumbTitle()).append('\n');
+				}
+				for (int i = 0; i < BACK_STACK_DEPTH; i++) {
+					Fragment f = fm.findFragmentByTag("detail" + i);
+					if (f == null) {
+						result.append("missing ").append(i).append('\n');
+						continue;
+					}
+					result.append(f.getClass().getName())
+					      .append(' ').append(f.getTag())
+					      .append(' ').append(f.getId())
+					      .append(' ').append(f.getArguments().getInt(ARG_INDEX))
+					      .append(' ').append(f.isAdded())
+					      .append(' ').append(f.isHidden()).append('\n');
+				}
+			}
+		});
+		return result.toString();
+	}
+
+	/**
+	 * Save and parcel the activity state <var>iterations</var> times.
+	 *
+	 * @return The parceled size in bytes and the average time of a single
+	 * save in nanoseconds.
+	 */
+	public long[] measureSavedState(final boolean compact, final int iterations) throws InterruptedException {
+		final long[] result = new long[2];
+		runOnUiThreadAndWait(new Runnable() {
+			@Override
+			public void run() {
+				getSupportFragmentManager().executePendingTransactions();
+				FragmentManager.enableCompactSavedState(compact);
+				try {
+					long start = System.nanoTime();
+					for (int i = 0; i < iterations; i++) {
+						Bundle state = new Bundle();
+						onSaveInstanceState(state);
+						Parcel parcel = Parcel.obtain();
+						state.writeToParcel(parcel, 0);
+						result[0] = parcel.dataSize();
+						parcel.recycle();
+					}
+					result[1] = (System.nanoTime() - start) / iterations;
+				} finally {
+					FragmentManager.enableCompactSavedState(false);
+				}
+			}
+		});
+		return result;
+	}
+}
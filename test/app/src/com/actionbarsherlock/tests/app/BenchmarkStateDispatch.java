@@ -0,0 +1,79 @@
+package com.actionbarsherlock.tests.app;
+
+import android.app.Instrumentation;
+import android.os.Bundle;
+import android.support.v4.app.Fragment;
+import android.support.v4.app.FragmentManager;
+import android.support.v4.app.FragmentTransaction;
+
+public final class BenchmarkStateDispatch extends BenchmarkActivity {
+	public static final int INACTIVE_FRAGMENTS = 500;
+
+	public static final class RetainedFragment extends Fragment {
+		@Override
+		public void onCreate(Bundle savedInstanceState) {
+			super.onCreate(savedInstanceState);
+			setRetainInstance(true);
+		}
+	}
+
+	public static final class VisibleFragment extends Fragment {
+		public int resumeCount;
+
+		@Override
+		public void onResume() {
+			super.onResume();
+			resumeCount++;
+		}
+	}
+
+	@Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+
+        if (savedInstanceState == null) {
+        	FragmentManager fm = getSupportFragmentManager();
+        	FragmentTransaction ft = fm.beginTransaction();
+        	for (int i = 0; i < INACTIVE_FRAGMENTS; i++) {
+        		ft.add(new RetainedFragment(), "retained" + i);
+        	}
+        	ft.add(new VisibleFragment(), "visible");
+        	ft.commit();
+        	fm.executePendingTransactions();
+
+        	// Detaching keeps the fragments active but no longer added.
+        	ft = fm.beginTransaction();
+        	for (int i = 0; i < INACTIVE_FRAGMENTS; i++) {
+        		ft.detach(fm.findFragmentByTag("retained" + i));
+        	}
+        	ft.commit();
+        }
+    }
+
+	public VisibleFragment getVisibleFragment() {
+		return (VisibleFragment)getSupportFragmentManager().findFragmentByTag("visible");
+	}
+
+	/**
+	 * Pause and resume the activity <var>iterations</var> times.
+	 *
+	 * @return The average time of a single pause and resume in nanoseconds.
+	 */
+	public long measureDispatch(final Instrumentation instrumentation, final int iterations) throws InterruptedException {
+		final long[] result = new long[1];
+		runOnUiThreadAndWait(new Runnable() {
+			@Override
+			public void run() {
+				getSupportFragmentManager().executePendingTransactions();
+				long start = System.nanoTime();
+				for (int i = 0; i < iterations; i++) {
+					instrumentation.callActivityOnPause(BenchmarkStateDispatch.this);
+					instrumentation.callActivityOnResume(BenchmarkStateDispatch.this);
+					onPostResume();
+				}
+				result[0] = (System.nanoTime() - start) / iterations;
+			}
+		});
+		return result[0];
+	}
+}
@@ -0,0 +1,133 @@
+package com.actionbarsherlock.tests.app;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import android.os.Bundle;
+import android.support.v4.app.Fragment;
+import android.support.v4.app.FragmentActivity;
+import android.support.v4.app.FragmentManager;
+import android.support.v4.app.FragmentTransaction;
+
+public final class FeatureBackStackCompaction extends FragmentActivity {
+	public static final int ENTRIES = 4;
+	public static final int DEPTH = 1;
+	static final String ARG_LABEL = "label";
+
+	/**
+	 * Fragment that counts its live instances.
+	 */
+	public static final class LabelFragment extends Fragment {
+		static int sAlive;
+
+		static LabelFragment newInstance(String label) {
+			LabelFragment f = new LabelFragment();
+			Bundle args = new Bundle();
+			args.putString(ARG_LABEL, label);
+			f.setArguments(args);
+			return f;
+		}
+
+		public String getLabel() {
+			return getArguments().getString(ARG_LABEL);
+		}
+
+		@Override
+		public void onCreate(Bundle savedInstanceState) {
+			super.onCreate(savedInstanceState);
+			sAlive++;
+		}
+
+		@Override
+		public void onDestroy() {
+			super.onDestroy();
+			sAlive--;
+		}
+	}
+
+	private LabelFragment first;
+	private int aliveAfterPush;
+	private int aliveAfterPop;
+	private boolean firstKept;
+	private final List<String> poppedLabels = new ArrayList<String>();
+
+	@Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.blank);
+
+        LabelFragment.sAlive = 0;
+        getSupportFragmentManager().setBackStackCompactionDepth(DEPTH);
+    }
+
+	/**
+	 * Push {@link #ENTRIES} back stack entries, each swapping in a new
+	 * fragment, then pop them all.  Only the first entry does not allow
+	 * compaction.
+	 */
+	public void pushAndPopAll() throws InterruptedException {
+		final CountDownLatch latch = new CountDownLatch(1);
+		runOnUiThread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					push();
+					popAll();
+				} finally {
+					latch.countDown();
+				}
+			}
+		});
+		latch.await();
+	}
+
+	private void push() {
+		FragmentManager fm = getSupportFragmentManager();
+		first = LabelFragment.newInstance("0");
+		fm.beginTransaction().add(first, "0").commit();
+		fm.executePendingTransactions();
+
+		LabelFragment previous = first;
+		for (int i = 1; i <= ENTRIES; i++) {
+			LabelFragment next = LabelFragment.newInstance(String.valueOf(i));
+			FragmentTransaction ft = fm.beginTransaction();
+			ft.remove(previous);
+			ft.add(next, next.getLabel());
+			ft.addToBackStack(null);
+			if (i > 1) {
+				ft.allowBackStackCompaction();
+			}
+			ft.commit();
+			fm.executePendingTransactions();
+			previous = next;
+		}
+		aliveAfterPush = LabelFragment.sAlive;
+	}
+
+	private void popAll() {
+		FragmentManager fm = getSupportFragmentManager();
+		for (int i = ENTRIES - 1; i >= 0; i--) {
+			fm.popBackStackImmediate();
+			Fragment shown = fm.findFragmentByTag(String.valueOf(i));
+			poppedLabels.add(shown != null && shown.isAdded() ? ((LabelFragment)shown).getLabel() : null);
+		}
+		firstKept = fm.findFragmentByTag("0") == first;
+		aliveAfterPop = LabelFragment.sAlive;
+	}
+
+	public int getAliveAfterPush() {
+		return aliveAfterPush;
+	}
+
+	public int getAliveAfterPop() {
+		return aliveAfterPop;
+	}
+
+	public boolean isFirstKept() {
+		return firstKept;
+	}
+
+	public List<String> getPoppedLabels() {
+		return poppedLabels;
+	}
+}
@@ -0,0 +1,110 @@
+package com.actionbarsherlock.tests.app;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.support.v4.app.FragmentActivity;
+import android.support.v4.content.LocalBroadcastManager;
+
+public final class FeatureBroadcastHandler extends FragmentActivity {
+	public static final String ACTION_ORDERED = "com.actionbarsherlock.tests.app.HANDLER_ORDERED";
+	public static final String ACTION_STICKY = "com.actionbarsherlock.tests.app.HANDLER_STICKY";
+	public static final String EXTRA_SEQUENCE = "sequence";
+	public static final int BROADCASTS = 50;
+
+	private HandlerThread thread;
+
+	private final CountDownLatch orderedDone = new CountDownLatch(BROADCASTS);
+	private final CountDownLatch stickyDone = new CountDownLatch(1);
+
+	// Written on the handler thread only.
+	private final List<Integer> sequences = new ArrayList<Integer>();
+	private boolean orderedOffThread;
+	private Thread stickyThread;
+
+	private final BroadcastReceiver orderedReceiver = new BroadcastReceiver() {
+		@Override
+		public void onReceive(Context context, Intent intent) {
+			if (Thread.currentThread() != thread) {
+				orderedOffThread = true;
+			}
+			sequences.add(intent.getIntExtra(EXTRA_SEQUENCE, -1));
+			orderedDone.countDown();
+		}
+	};
+
+	private final BroadcastReceiver stickyReceiver = new BroadcastReceiver() {
+		@Override
+		public void onReceive(Context context, Intent intent) {
+			stickyThread = Thread.currentThread();
+			stickyDone.countDown();
+		}
+	};
+
+	@Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.blank);
+
+        thread = new HandlerThread("Receivers");
+        thread.start();
+    }
+
+	@Override
+	protected void onDestroy() {
+		super.onDestroy();
+		LocalBroadcastManager manager = LocalBroadcastManager.getInstance(this);
+		manager.unregisterReceiver(orderedReceiver);
+		manager.unregisterReceiver(stickyReceiver);
+		manager.removeStickyBroadcast(new Intent(ACTION_STICKY));
+		thread.quit();
+	}
+
+	/**
+	 * Register both receivers on the handler thread, the sticky one after
+	 * its sticky broadcast was sent, then send {@link #BROADCASTS}
+	 * numbered broadcasts to the other from the UI thread.
+	 *
+	 * @return True if every broadcast arrived in time.
+	 */
+	public boolean sendToHandler() throws InterruptedException {
+		runOnUiThread(new Runnable() {
+			@Override
+			public void run() {
+				LocalBroadcastManager manager = LocalBroadcastManager.getInstance(FeatureBroadcastHandler.this);
+				Handler handler = new Handler(thread.getLooper());
+				manager.sendStickyBroadcast(new Intent(ACTION_STICKY));
+				manager.registerReceiver(stickyReceiver, new IntentFilter(ACTION_STICKY), handler);
+				manager.registerReceiver(orderedReceiver, new IntentFilter(ACTION_ORDERED), handler);
+				for (int i = 0; i < BROADCASTS; i++) {
+					manager.sendBroadcast(new Intent(ACTION_ORDERED).putExtra(EXTRA_SEQUENCE, i));
+				}
+			}
+		});
+		return orderedDone.await(10, TimeUnit.SECONDS) && stickyDone.await(10, TimeUnit.SECONDS);
+	}
+
+	public Thread getHandlerThread() {
+		return thread;
+	}
+
+	public Thread getStickyThread() {
+		return stickyThread;
+	}
+
+	public boolean wasOrderedOffThread() {
+		return orderedOffThread;
+	}
+
+	public List<Integer> getSequences() {
+		return sequences;
+	}
+}
@@ -0,0 +1,137 @@
+package com.actionbarsherlock.tests.app;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.v4.app.FragmentActivity;
+import android.support.v4.content.LocalBroadcastManager;
+
+public final class FeatureBroadcastMatching extends FragmentActivity {
+	public static final String ACTION = "com.actionbarsherlock.tests.app.MATCHING";
+	static final String CATEGORY_A = "com.actionbarsherlock.tests.app.CATEGORY_A";
+	static final String CATEGORY_B = "com.actionbarsherlock.tests.app.CATEGORY_B";
+
+	// Filters as { data types, data schemes, categories }.
+	private static final String[][][] FILTERS = {
+		{ {}, {}, {} },
+		{ { "*/*" }, {}, {} },
+		{ { "image/*" }, {}, {} },
+		{ { "image/png" }, {}, {} },
+		{ { "text/plain", "image/*" }, {}, {} },
+		{ {}, { "http" }, {} },
+		{ { "image/*" }, { "file" }, {} },
+		{ {}, {}, { CATEGORY_A } },
+		{ {}, {}, { CATEGORY_A, CATEGORY_B } },
+		{ { "*/*" }, {}, { CATEGORY_B } },
+		{ { "image/png" }, { "content", "file" }, { CATEGORY_A } },
+	};
+
+	private static final String[] TYPES = { null, "image/png", "image/jpeg", "image/*", "*/*", "text/plain", "application/x-test" };
+	private static final String[] DATA = { null, "file:///sdcard/a.png", "http://example.com/a", "content://com.actionbarsherlock.tests.app.none/a" };
+	private static final String[][] CATEGORIES = { {}, { CATEGORY_A }, { CATEGORY_B }, { CATEGORY_A, CATEGORY_B } };
+
+	private final List<IntentFilter> filters = new ArrayList<IntentFilter>();
+	private final List<BroadcastReceiver> receivers = new ArrayList<BroadcastReceiver>();
+	private final boolean[] received = new boolean[FILTERS.length];
+
+	@Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.blank);
+
+        LocalBroadcastManager manager = LocalBroadcastManager.getInstance(this);
+        for (int i = 0; i < FILTERS.length; i++) {
+        	IntentFilter filter = new IntentFilter(ACTION);
+        	try {
+        		for (String type : FILTERS[i][0]) {
+        			filter.addDataType(type);
+        		}
+        	} catch (IntentFilter.MalformedMimeTypeException e) {
+        		throw new RuntimeException(e);
+        	}
+        	for (String scheme : FILTERS[i][1]) {
+        		filter.addDataScheme(scheme);
+        	}
+        	for (String category : FILTERS[i][2]) {
+        		filter.addCategory(category);
+        	}
+        	final int index = i;
+        	BroadcastReceiver receiver = new BroadcastReceiver() {
+        		@Override
+        		public void onReceive(Context context, Intent intent) {
+        			received[index] = true;
+        		}
+        	};
+        	filters.add(filter);
+        	receivers.add(receiver);
+        	manager.registerReceiver(receiver, filter);
+        }
+    }
+
+	@Override
+	protected void onDestroy() {
+		super.onDestroy();
+		LocalBroadcastManager manager = LocalBroadcastManager.getInstance(this);
+		for (BroadcastReceiver receiver : receivers) {
+			manager.unregisterReceiver(receiver);
+		}
+	}
+
+	/**
+	 * Broadcast every combination of type, data and categories, and check
+	 * that exactly the receivers whose filters match according to
+	 * {@link IntentFilter#match} receive it.
+	 *
+	 * @return A description of each wrong delivery.
+	 */
+	public List<String> findMismatches() throws InterruptedException {
+		final List<String> mismatches = new ArrayList<String>();
+		final CountDownLatch latch = new CountDownLatch(1);
+		runOnUiThread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					for (String type : TYPES) {
+						for (String data : DATA) {
+							for (String[] categories : CATEGORIES) {
+								check(newIntent(type, data, categories), mismatches);
+							}
+						}
+					}
+				} finally {
+					latch.countDown();
+				}
+			}
+		});
+		latch.await();
+		return mismatches;
+	}
+
+	private static Intent newIntent(String type, String data, String[] categories) {
+		Intent intent = new Intent(ACTION);
+		intent.setDataAndType(data != null ? Uri.parse(data) : null, type);
+		for (String category : categories) {
+			intent.addCategory(category);
+		}
+		return intent;
+	}
+
+	private void check(Intent intent, List<String> mismatches) {
+		for (int i = 0; i < received.length; i++) {
+			received[i] = false;
+		}
+		LocalBroadcastManager.getInstance(this).sendBroadcastSync(intent);
+		for (int i = 0; i < received.length; i++) {
+			boolean expected = filters.get(i).match(getContentResolver(), intent, true, "FeatureBroadcastMatching") >= 0;
+			if (received[i] != expected) {
+				mismatches.add(intent + " " + (expected ? "missed" : "wrongly reached") + " filter #" + i);
+			}
+		}
+	}
+}
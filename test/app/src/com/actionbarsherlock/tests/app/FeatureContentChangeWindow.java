@@ -0,0 +1,120 @@
+package com.actionbarsherlock.tests.app;
+
+import java.util.concurrent.CountDownLatch;
+import android.content.Context;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.support.v4.app.FragmentActivity;
+import android.support.v4.content.AsyncTaskLoader;
+import android.support.v4.content.LoaderStats;
+
+public final class FeatureContentChangeWindow extends FragmentActivity {
+	public static final long WINDOW = 200;
+
+	/**
+	 * Loader whose load waits for a gate to open, and which counts the
+	 * content changes reported to it instead of reloading.
+	 */
+	public static final class CountingLoader extends AsyncTaskLoader<Integer> {
+		private final CountDownLatch gate;
+		public int contentChanges;
+
+		public CountingLoader(Context context, CountDownLatch gate) {
+			super(context);
+			this.gate = gate;
+		}
+
+		@Override
+		public Integer loadInBackground() {
+			try {
+				gate.await();
+			} catch (InterruptedException e) {
+				return null;
+			}
+			return 42;
+		}
+
+		@Override
+		public void onContentChanged() {
+			contentChanges++;
+		}
+	}
+
+	private final CountDownLatch gate = new CountDownLatch(1);
+	private CountingLoader loader;
+	private CountingLoader.ForceLoadContentObserver observer;
+
+	@Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.blank);
+
+        loader = new CountingLoader(this, gate);
+        loader.setContentChangeWindow(WINDOW);
+        observer = loader.new ForceLoadContentObserver();
+        loader.startLoading();
+    }
+
+	@Override
+	protected void onDestroy() {
+		gate.countDown();
+		loader.reset();
+		super.onDestroy();
+	}
+
+	private void runOnUiThreadAndWait(final Runnable action) throws InterruptedException {
+		final CountDownLatch latch = new CountDownLatch(1);
+		runOnUiThread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					action.run();
+				} finally {
+					latch.countDown();
+				}
+			}
+		});
+		latch.await();
+	}
+
+	/**
+	 * Within one content change window, notify a change, start a load that
+	 * keeps running, and notify <var>changesAfterStart</var> more changes.
+	 * Then wait for the window to close.
+	 *
+	 * @return The number of content changes reported to the loader.
+	 */
+	public int changeAroundLoadStart(final int changesAfterStart) throws InterruptedException {
+		runOnUiThreadAndWait(new Runnable() {
+			@Override
+			public void run() {
+				observer.onChange(false);
+				loader.forceLoad();
+				for (int i = 0; i < changesAfterStart; i++) {
+					observer.onChange(false);
+				}
+			}
+		});
+		SystemClock.sleep(5 * WINDOW);
+
+		final int[] result = new int[1];
+		runOnUiThreadAndWait(new Runnable() {
+			@Override
+			public void run() {
+				result[0] = loader.contentChanges;
+			}
+		});
+		return result[0];
+	}
+
+	public LoaderStats getStats() throws InterruptedException {
+		final LoaderStats[] result = new LoaderStats[1];
+		runOnUiThreadAndWait(new Runnable() {
+			@Override
+			public void run() {
+				result[0] = loader.getStats();
+			}
+		});
+		return result[0];
+	}
+}
@@ -0,0 +1,81 @@
+package com.actionbarsherlock.tests.app;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.os.Bundle;
+import android.support.v4.app.FragmentActivity;
+import android.support.v4.app.LoaderManager;
+import android.support.v4.content.CursorLoader;
+import android.support.v4.content.Loader;
+
+public final class FeatureCursorLoaderOverride extends FragmentActivity {
+	/**
+	 * Loader that wraps the cursor of its superclass.
+	 */
+	public static final class WrappingCursorLoader extends CursorLoader {
+		public final AtomicInteger calls = new AtomicInteger();
+
+		public WrappingCursorLoader(Context context) {
+			super(context, FeatureLoaderCoalescing.CONTENT_URI, null, null, null, null);
+		}
+
+		@Override
+		public Cursor loadInBackground() {
+			calls.incrementAndGet();
+			Cursor cursor = super.loadInBackground();
+			return cursor != null ? new CursorWrapper(cursor) : null;
+		}
+	}
+
+	private WrappingCursorLoader loader;
+	private Cursor result;
+	private final CountDownLatch loaded = new CountDownLatch(1);
+
+	private final LoaderManager.LoaderCallbacks<Cursor> callbacks = new LoaderManager.LoaderCallbacks<Cursor>() {
+		@Override
+		public Loader<Cursor> onCreateLoader(int id, Bundle args) {
+			loader = new WrappingCursorLoader(FeatureCursorLoaderOverride.this);
+			return loader;
+		}
+
+		@Override
+		public void onLoadFinished(Loader<Cursor> l, Cursor data) {
+			if (result == null) {
+				result = data;
+				loaded.countDown();
+			}
+		}
+
+		@Override
+		public void onLoaderReset(Loader<Cursor> l) {
+		}
+	};
+
+	@Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.blank);
+
+        getSupportLoaderManager().initLoader(0, null, callbacks);
+    }
+
+	/**
+	 * Wait for the loader to deliver its first result.
+	 *
+	 * @return The delivered cursor, or null on timeout.
+	 */
+	public Cursor awaitLoad() throws InterruptedException {
+		if (!loaded.await(10, TimeUnit.SECONDS)) {
+			return null;
+		}
+		return result;
+	}
+
+	public int getLoadCalls() {
+		return loader.calls.get();
+	}
+}
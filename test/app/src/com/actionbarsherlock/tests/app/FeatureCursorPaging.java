@@ -0,0 +1,244 @@
+package com.actionbarsherlock.tests.app;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.v4.app.FragmentActivity;
+import android.support.v4.app.LoaderManager;
+import android.support.v4.content.CursorLoader;
+import android.support.v4.content.Loader;
+import android.support.v4.widget.CursorAdapter;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+public final class FeatureCursorPaging extends FragmentActivity {
+	public static final Uri CONTENT_URI = Uri.parse("content://com.actionbarsherlock.tests.app.paging/rows");
+	public static final int ROWS = 25;
+	public static final int PAGE_SIZE = 10;
+
+	/**
+	 * Provider backed by an in-memory SQLite table, so that it honors the
+	 * LIMIT and OFFSET clauses a paged loader adds to the sort order.
+	 */
+	public static final class PagingProvider extends ContentProvider {
+		public static final AtomicInteger QUERIES = new AtomicInteger();
+		private static final String TABLE = "rows";
+
+		private SQLiteDatabase db;
+
+		@Override
+		public boolean onCreate() {
+			db = SQLiteDatabase.create(null);
+			db.execSQL("CREATE TABLE " + TABLE + " (_id INTEGER PRIMARY KEY, name TEXT)");
+			return true;
+		}
+
+		@Override
+		public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+			QUERIES.incrementAndGet();
+			Cursor cursor = db.query(TABLE, projection, selection, selectionArgs, null, null, sortOrder);
+			cursor.setNotificationUri(getContext().getContentResolver(), uri);
+			return cursor;
+		}
+
+		@Override
+		public String getType(Uri uri) {
+			return null;
+		}
+
+		@Override
+		public Uri insert(Uri uri, ContentValues values) {
+			long id = db.insert(TABLE, null, values);
+			getContext().getContentResolver().notifyChange(uri, null);
+			return Uri.withAppendedPath(uri, String.valueOf(id));
+		}
+
+		@Override
+		public int delete(Uri uri, String selection, String[] selectionArgs) {
+			int count = db.delete(TABLE, selection, selectionArgs);
+			getContext().getContentResolver().notifyChange(uri, null);
+			return count;
+		}
+
+		@Override
+		public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+			return 0;
+		}
+	}
+
+	private final class RowAdapter extends CursorAdapter {
+		RowAdapter() {
+			super(FeatureCursorPaging.this, null, 0);
+		}
+
+		@Override
+		public View newView(Context context, Cursor cursor, ViewGroup parent) {
+			return new TextView(context);
+		}
+
+		@Override
+		public void bindView(View view, Context context, Cursor cursor) {
+			((TextView)view).setText(cursor.getString(1));
+		}
+	}
+
+	private CursorLoader loader;
+	private RowAdapter adapter;
+	private final BlockingQueue<List<Long>> results = new LinkedBlockingQueue<List<Long>>();
+
+	private final LoaderManager.LoaderCallbacks<Cursor> callbacks = new LoaderManager.LoaderCallbacks<Cursor>() {
+		@Override
+		public Loader<Cursor> onCreateLoader(int id, Bundle args) {
+			loader = new CursorLoader(FeatureCursorPaging.this, CONTENT_URI, null, null, null, "_id");
+			loader.setPageSize(PAGE_SIZE);
+			adapter.setPagedLoader(loader);
+			return loader;
+		}
+
+		@Override
+		public void onLoadFinished(Loader<Cursor> l, Cursor data) {
+			adapter.swapCursor(data);
+			List<Long> ids = new ArrayList<Long>(data.getCount());
+			for (data.moveToFirst(); !data.isAfterLast(); data.moveToNext()) {
+				ids.add(data.getLong(0));
+			}
+			results.add(ids);
+		}
+
+		@Override
+		public void onLoaderReset(Loader<Cursor> l) {
+			adapter.swapCursor(null);
+		}
+	};
+
+	@Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.blank);
+
+        getContentResolver().delete(CONTENT_URI, null, null);
+        for (int i = 0; i < ROWS; i++) {
+        	insertRow(i);
+        }
+        PagingProvider.QUERIES.set(0);
+
+        adapter = new RowAdapter();
+        getSupportLoaderManager().initLoader(0, null, callbacks);
+    }
+
+	private void insertRow(long id) {
+		ContentValues values = new ContentValues();
+		values.put("_id", id);
+		values.put("name", "Row " + id);
+		getContentResolver().insert(CONTENT_URI, values);
+	}
+
+	private void runOnUiThreadAndWait(final Runnable action) throws InterruptedException {
+		final CountDownLatch latch = new CountDownLatch(1);
+		runOnUiThread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					action.run();
+				} finally {
+					latch.countDown();
+				}
+			}
+		});
+		latch.await();
+	}
+
+	/**
+	 * Wait for the loader to deliver its next result.
+	 *
+	 * @return The row ids of the delivered cursor, in order, or null on
+	 * timeout.
+	 */
+	public List<Long> awaitResult() throws InterruptedException {
+		return results.poll(10, TimeUnit.SECONDS);
+	}
+
+	public boolean hasMoreRows() throws InterruptedException {
+		final boolean[] result = new boolean[1];
+		runOnUiThreadAndWait(new Runnable() {
+			@Override
+			public void run() {
+				result[0] = loader.hasMoreRows();
+			}
+		});
+		return result[0];
+	}
+
+	/**
+	 * @return Whether the loader started loading the next page.
+	 */
+	public boolean loadMoreRows() throws InterruptedException {
+		final boolean[] result = new boolean[1];
+		runOnUiThreadAndWait(new Runnable() {
+			@Override
+			public void run() {
+				result[0] = loader.loadMoreRows();
+			}
+		});
+		return result[0];
+	}
+
+	/**
+	 * Have the adapter create the view for the row at <var>position</var>,
+	 * as a list scrolling to it would.
+	 */
+	public void showRow(final int position) throws InterruptedException {
+		runOnUiThreadAndWait(new Runnable() {
+			@Override
+			public void run() {
+				adapter.getView(position, null, null);
+			}
+		});
+	}
+
+	/**
+	 * Add a row before every existing one, which the provider notifies the
+	 * loader of.
+	 */
+	public void insertFirstRow() {
+		insertRow(-1);
+	}
+
+	/**
+	 * Go back to loading only the first page.
+	 */
+	public void resetPaging() throws InterruptedException {
+		runOnUiThreadAndWait(new Runnable() {
+			@Override
+			public void run() {
+				loader.setPageSize(PAGE_SIZE);
+				loader.forceLoad();
+			}
+		});
+	}
+
+	/**
+	 * @return Whether paging a loader without a sort order is refused.
+	 */
+	public boolean pagingWithoutSortOrderThrows() {
+		CursorLoader unsorted = new CursorLoader(this, CONTENT_URI, null, null, null, null);
+		try {
+			unsorted.setPageSize(PAGE_SIZE);
+			return false;
+		} catch (IllegalStateException e) {
+			return true;
+		}
+	}
+}
@@ -0,0 +1,157 @@
+package com.actionbarsherlock.tests.app;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.support.v4.app.FragmentActivity;
+import android.support.v4.app.LoaderManager;
+import android.support.v4.content.CursorLoader;
+import android.support.v4.content.Loader;
+
+public final class FeatureLoaderCoalescing extends FragmentActivity {
+	public static final Uri CONTENT_URI = Uri.parse("content://com.actionbarsherlock.tests.app.coalescing/rows");
+	public static final int ROWS = 3;
+	public static final int LOADERS = 2;
+
+	/**
+	 * Provider that counts its queries, and is slow enough to answer them
+	 * that concurrent loads overlap.  A query returns the rows that existed
+	 * when it started.
+	 */
+	public static final class CountingProvider extends ContentProvider {
+		public static final AtomicInteger QUERIES = new AtomicInteger();
+		public static final AtomicInteger ROW_COUNT = new AtomicInteger(ROWS);
+
+		@Override
+		public boolean onCreate() {
+			return true;
+		}
+
+		@Override
+		public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+			QUERIES.incrementAndGet();
+			final int rows = ROW_COUNT.get();
+			SystemClock.sleep(500);
+			MatrixCursor cursor = new MatrixCursor(new String[] { "_id", "name" });
+			for (int i = 0; i < rows; i++) {
+				cursor.addRow(new Object[] { i, "Row " + i });
+			}
+			cursor.setNotificationUri(getContext().getContentResolver(), uri);
+			return cursor;
+		}
+
+		@Override
+		public String getType(Uri uri) {
+			return null;
+		}
+
+		@Override
+		public Uri insert(Uri uri, ContentValues values) {
+			return null;
+		}
+
+		@Override
+		public int delete(Uri uri, String selection, String[] selectionArgs) {
+			return 0;
+		}
+
+		@Override
+		public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+			return 0;
+		}
+	}
+
+	private final Cursor[] results = new Cursor[LOADERS];
+	private final int[] counts = new int[LOADERS];
+	private final CountDownLatch loaded = new CountDownLatch(LOADERS);
+	private final int[] latestCounts = new int[LOADERS];
+	private final CountDownLatch refreshed = new CountDownLatch(LOADERS);
+	private final boolean[] sawRefresh = new boolean[LOADERS];
+
+	private final LoaderManager.LoaderCallbacks<Cursor> callbacks = new LoaderManager.LoaderCallbacks<Cursor>() {
+		@Override
+		public Loader<Cursor> onCreateLoader(int id, Bundle args) {
+			return new CursorLoader(FeatureLoaderCoalescing.this, CONTENT_URI, null, null, null, null);
+		}
+
+		@Override
+		public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
+			final int id = loader.getId();
+			if (results[id] == null) {
+				results[id] = data;
+				counts[id] = data.getCount();
+				loaded.countDown();
+			}
+			latestCounts[id] = data.getCount();
+			if (!sawRefresh[id] && data.getCount() == ROWS + 1) {
+				sawRefresh[id] = true;
+				refreshed.countDown();
+			}
+		}
+
+		@Override
+		public void onLoaderReset(Loader<Cursor> loader) {
+		}
+	};
+
+	@Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.blank);
+
+        CountingProvider.QUERIES.set(0);
+        CountingProvider.ROW_COUNT.set(ROWS);
+        for (int i = 0; i < LOADERS; i++) {
+        	getSupportLoaderManager().initLoader(i, null, callbacks);
+        }
+    }
+
+	/**
+	 * Wait for every loader to deliver its first result.
+	 *
+	 * @return The row count of each loader's cursor, or null on timeout.
+	 */
+	public int[] awaitLoads() throws InterruptedException {
+		if (!loaded.await(10, TimeUnit.SECONDS)) {
+			return null;
+		}
+		return counts;
+	}
+
+	public boolean resultsAreDistinct() {
+		return results[0] != results[1];
+	}
+
+	/**
+	 * Reload the second loader and, while its query runs, add a row and
+	 * notify.  The first loader reloads on the change while the stale
+	 * query is still running.
+	 *
+	 * @return The row count of each loader's latest cursor, once both have
+	 * seen the new row or after a timeout.
+	 */
+	public int[] changeWhileLoading() throws InterruptedException {
+		final CountDownLatch started = new CountDownLatch(1);
+		runOnUiThread(new Runnable() {
+			@Override
+			public void run() {
+				getSupportLoaderManager().getLoader(1).forceLoad();
+				started.countDown();
+			}
+		});
+		started.await();
+		SystemClock.sleep(200);
+
+		CountingProvider.ROW_COUNT.set(ROWS + 1);
+		getContentResolver().notifyChange(CONTENT_URI, null);
+		refreshed.await(10, TimeUnit.SECONDS);
+		return latestCounts;
+	}
+}
@@ -0,0 +1,146 @@
+package com.actionbarsherlock.tests.app;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import android.content.Context;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.support.v4.app.FragmentActivity;
+import android.support.v4.app.LoaderManager;
+import android.support.v4.content.AsyncTaskLoader;
+import android.support.v4.content.Loader;
+
+public final class FeatureLoaderGroups extends FragmentActivity {
+	public static final int FAST = 0;
+	public static final int SLOW = 1;
+
+	/**
+	 * Loader whose load, if it has a gate, waits for the gate to open.
+	 */
+	public static final class GatedLoader extends AsyncTaskLoader<Integer> {
+		private final CountDownLatch gate;
+		private Integer result;
+
+		public GatedLoader(Context context, CountDownLatch gate) {
+			super(context);
+			this.gate = gate;
+		}
+
+		@Override
+		public Integer loadInBackground() {
+			if (gate != null) {
+				try {
+					gate.await();
+				} catch (InterruptedException e) {
+					return null;
+				}
+			}
+			return getId();
+		}
+
+		@Override
+		public void deliverResult(Integer data) {
+			result = data;
+			super.deliverResult(data);
+		}
+
+		@Override
+		protected void onStartLoading() {
+			if (result != null) {
+				deliverResult(result);
+			} else {
+				forceLoad();
+			}
+		}
+	}
+
+	private final CountDownLatch gate = new CountDownLatch(1);
+	private final CountDownLatch[] delivered = { new CountDownLatch(1), new CountDownLatch(1) };
+	private final long[] deliveryTimes = new long[2];
+	private long startTime;
+	private long gateTime;
+
+	private final LoaderManager.LoaderCallbacks<Integer> callbacks = new LoaderManager.LoaderCallbacks<Integer>() {
+		@Override
+		public Loader<Integer> onCreateLoader(int id, Bundle args) {
+			return new GatedLoader(FeatureLoaderGroups.this, id == SLOW ? gate : null);
+		}
+
+		@Override
+		public void onLoadFinished(Loader<Integer> loader, Integer data) {
+			final int id = loader.getId();
+			if (delivered[id].getCount() > 0) {
+				deliveryTimes[id] = SystemClock.uptimeMillis();
+				delivered[id].countDown();
+			}
+		}
+
+		@Override
+		public void onLoaderReset(Loader<Integer> loader) {
+		}
+	};
+
+	@Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.blank);
+    }
+
+	@Override
+	protected void onDestroy() {
+		// Don't leave the slow load blocked behind a test.
+		gate.countDown();
+		super.onDestroy();
+	}
+
+	/**
+	 * Group the fast and the slow loader, then start both.
+	 */
+	public void startGroup(final long timeoutMillis) throws InterruptedException {
+		final CountDownLatch started = new CountDownLatch(1);
+		runOnUiThread(new Runnable() {
+			@Override
+			public void run() {
+				startTime = SystemClock.uptimeMillis();
+				LoaderManager lm = getSupportLoaderManager();
+				lm.groupLoaders(timeoutMillis, FAST, SLOW);
+				lm.initLoader(FAST, null, callbacks);
+				lm.initLoader(SLOW, null, callbacks);
+				started.countDown();
+			}
+		});
+		started.await();
+	}
+
+	/**
+	 * Let the slow loader finish its load.
+	 */
+	public void openGate() {
+		gateTime = SystemClock.uptimeMillis();
+		gate.countDown();
+	}
+
+	/**
+	 * @return Whether the loader <var>id</var> delivered a result to the
+	 * callbacks within <var>timeoutMillis</var>.
+	 */
+	public boolean awaitDelivery(int id, long timeoutMillis) throws InterruptedException {
+		return delivered[id].await(timeoutMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @return The time, since the group was started, at which the loader
+	 * <var>id</var> delivered its result.
+	 */
+	public long getDeliveryTime(int id) {
+		return deliveryTimes[id] - startTime;
+	}
+
+	/**
+	 * @return The time, since the group was started, at which the slow
+	 * loader was let finish.
+	 */
+	public long getGateTime() {
+		return gateTime - startTime;
+	}
+}
@@ -0,0 +1,188 @@
+package com.actionbarsherlock.tests.app;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import android.content.Context;
+import android.os.Bundle;
+import android.support.v4.app.Fragment;
+import android.support.v4.app.FragmentActivity;
+import android.support.v4.app.FragmentTransaction;
+import android.support.v4.app.LoaderManager;
+import android.support.v4.content.AsyncTaskLoader;
+import android.support.v4.content.Loader;
+import android.support.v4.content.ModernAsyncTask;
+
+public final class FeatureLoaderPriority extends FragmentActivity {
+	public static final String ACTIVITY = "activity";
+	public static final String VISIBLE = "visible";
+	public static final String HIDDEN = "hidden";
+	public static final String OFF_PAGE = "offPage";
+
+	/** Names of the loaders, in the order their loads ran. */
+	public static final List<String> LOAD_ORDER = Collections.synchronizedList(new ArrayList<String>());
+	/** Priority of each loader when it was started. */
+	public static final Map<String, Integer> START_PRIORITIES = new ConcurrentHashMap<String, Integer>();
+
+	private static final int BLOCKERS = Math.max(2, Runtime.getRuntime().availableProcessors());
+	private static volatile Semaphore gate = new Semaphore(0);
+
+	/**
+	 * Loader that records its priority when started and the order of its
+	 * load among the others.
+	 */
+	public static final class RecordingLoader extends AsyncTaskLoader<String> {
+		private final String name;
+		private final boolean load;
+		private String result;
+
+		public RecordingLoader(Context context, String name, boolean load) {
+			super(context);
+			this.name = name;
+			this.load = load;
+		}
+
+		@Override
+		public String loadInBackground() {
+			LOAD_ORDER.add(name);
+			return name;
+		}
+
+		@Override
+		public void deliverResult(String data) {
+			result = data;
+			super.deliverResult(data);
+		}
+
+		@Override
+		protected void onStartLoading() {
+			START_PRIORITIES.put(name, getPriority());
+			if (load && result == null) {
+				forceLoad();
+			}
+		}
+	}
+
+	private static final class Callbacks implements LoaderManager.LoaderCallbacks<String> {
+		private final Context context;
+		private final String name;
+		private final boolean load;
+
+		Callbacks(Context context, String name, boolean load) {
+			this.context = context;
+			this.name = name;
+			this.load = load;
+		}
+
+		@Override
+		public Loader<String> onCreateLoader(int id, Bundle args) {
+			return new RecordingLoader(context, name, load);
+		}
+
+		@Override
+		public void onLoadFinished(Loader<String> loader, String data) {
+		}
+
+		@Override
+		public void onLoaderReset(Loader<String> loader) {
+		}
+	}
+
+	public static final class PriorityFragment extends Fragment {
+		@Override
+		public void onActivityCreated(Bundle savedInstanceState) {
+			super.onActivityCreated(savedInstanceState);
+			getLoaderManager().initLoader(0, null, new Callbacks(getActivity(), getTag(), true));
+		}
+	}
+
+	/**
+	 * Occupy every thread of the priority executor, so that loads queue up
+	 * in priority order until {@link #releaseThreads} is called.
+	 */
+	public static void blockThreads() throws InterruptedException {
+		final Semaphore gate = new Semaphore(0);
+		final CountDownLatch running = new CountDownLatch(BLOCKERS);
+		FeatureLoaderPriority.gate = gate;
+		for (int i = 0; i < BLOCKERS; i++) {
+			ModernAsyncTask.PRIORITY_EXECUTOR.execute(new Runnable() {
+				@Override
+				public void run() {
+					running.countDown();
+					gate.acquireUninterruptibly();
+				}
+			});
+		}
+		running.await();
+	}
+
+	/**
+	 * Free <var>count</var> of the threads taken by {@link #blockThreads}.
+	 */
+	public static void releaseThreads(int count) {
+		gate.release(count);
+	}
+
+	/**
+	 * Free all of the threads taken by {@link #blockThreads}.
+	 */
+	public static void releaseThreads() {
+		gate.release(BLOCKERS);
+	}
+
+	@Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.blank);
+
+        LOAD_ORDER.clear();
+        START_PRIORITIES.clear();
+
+        // Only records its priority; loading would compete with the
+        // visible fragment.
+        getSupportLoaderManager().initLoader(0, null, new Callbacks(this, ACTIVITY, false));
+
+        if (savedInstanceState == null) {
+        	FragmentTransaction ft = getSupportFragmentManager().beginTransaction();
+        	ft.add(new PriorityFragment(), VISIBLE);
+        	Fragment hidden = new PriorityFragment();
+        	ft.add(hidden, HIDDEN);
+        	ft.hide(hidden);
+        	Fragment offPage = new PriorityFragment();
+        	offPage.setMenuVisibility(false);
+        	ft.add(offPage, OFF_PAGE);
+        	ft.commit();
+        }
+    }
+
+	@Override
+	protected void onDestroy() {
+		// Don't leave threads blocked behind a failed test.
+		releaseThreads();
+		super.onDestroy();
+	}
+
+	/**
+	 * @return The current priority of the loader <var>name</var>.
+	 */
+	public int getPriority(final String name) throws InterruptedException {
+		final int[] result = new int[1];
+		final CountDownLatch done = new CountDownLatch(1);
+		runOnUiThread(new Runnable() {
+			@Override
+			public void run() {
+				LoaderManager lm = ACTIVITY.equals(name)
+						? getSupportLoaderManager()
+						: getSupportFragmentManager().findFragmentByTag(name).getLoaderManager();
+				result[0] = ((RecordingLoader)lm.<String>getLoader(0)).getPriority();
+				done.countDown();
+			}
+		});
+		done.await();
+		return result[0];
+	}
+}
@@ -0,0 +1,112 @@
+package com.actionbarsherlock.tests.app;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Bundle;
+import android.support.v4.app.FragmentActivity;
+import android.support.v4.content.LocalBroadcastManager;
+
+public final class FeatureLocalEvents extends FragmentActivity {
+	public static final String ACTION = "com.actionbarsherlock.tests.app.EVENTS";
+	static final String EXTRA_NAME = "name";
+
+	public static class BaseEvent {
+		final String name;
+
+		BaseEvent(String name) {
+			this.name = name;
+		}
+	}
+
+	public static final class SubEvent extends BaseEvent {
+		SubEvent(String name) {
+			super(name);
+		}
+	}
+
+	public static final class OtherEvent {
+		final String name;
+
+		OtherEvent(String name) {
+			this.name = name;
+		}
+	}
+
+	/** Everything delivered, in order: "event " or "intent " and a name. */
+	private final List<String> log = new ArrayList<String>();
+	private boolean sentAfterUnregister;
+
+	private final LocalBroadcastManager.EventReceiver<Object> eventReceiver = new LocalBroadcastManager.EventReceiver<Object>() {
+		@Override
+		public void onEvent(Object event) {
+			log.add("event " + (event instanceof BaseEvent ? ((BaseEvent)event).name : ((OtherEvent)event).name));
+		}
+	};
+
+	private final BroadcastReceiver intentReceiver = new BroadcastReceiver() {
+		@Override
+		public void onReceive(Context context, Intent intent) {
+			log.add("intent " + intent.getStringExtra(EXTRA_NAME));
+		}
+	};
+
+	@Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.blank);
+    }
+
+	@Override
+	protected void onDestroy() {
+		super.onDestroy();
+		LocalBroadcastManager manager = LocalBroadcastManager.getInstance(this);
+		manager.unregisterEventReceiver(eventReceiver);
+		manager.unregisterReceiver(intentReceiver);
+	}
+
+	/**
+	 * Register one receiver for two event classes, interleave events with
+	 * an intent broadcast, then unregister it and send again.
+	 *
+	 * @return Everything delivered, in order.
+	 */
+	public List<String> sendEvents() throws InterruptedException {
+		final CountDownLatch latch = new CountDownLatch(1);
+		runOnUiThread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					LocalBroadcastManager manager = LocalBroadcastManager.getInstance(FeatureLocalEvents.this);
+					manager.registerEventReceiver(BaseEvent.class, eventReceiver);
+					manager.registerEventReceiver(OtherEvent.class, eventReceiver);
+					manager.registerReceiver(intentReceiver, new IntentFilter(ACTION));
+
+					manager.sendEvent(new BaseEvent("1"));
+					manager.sendBroadcast(new Intent(ACTION).putExtra(EXTRA_NAME, "2"));
+					manager.sendEvent(new SubEvent("3"));
+					manager.sendEvent(new OtherEvent("4"));
+					// Runs everything queued so far, then this.
+					manager.sendEventSync(new BaseEvent("5"));
+
+					manager.unregisterEventReceiver(eventReceiver);
+					sentAfterUnregister = manager.sendEvent(new BaseEvent("6"))
+							| manager.sendEvent(new OtherEvent("7"));
+					manager.sendBroadcastSync(new Intent(ACTION).putExtra(EXTRA_NAME, "8"));
+				} finally {
+					latch.countDown();
+				}
+			}
+		});
+		latch.await();
+		return log;
+	}
+
+	public boolean wasSentAfterUnregister() {
+		return sentAfterUnregister;
+	}
+}
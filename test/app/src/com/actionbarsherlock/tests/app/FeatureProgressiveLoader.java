@@ -0,0 +1,142 @@
+package com.actionbarsherlock.tests.app;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import android.content.Context;
+import android.os.Bundle;
+import android.support.v4.app.FragmentActivity;
+import android.support.v4.app.LoaderManager;
+import android.support.v4.content.Loader;
+import android.support.v4.content.ProgressiveLoader;
+
+public final class FeatureProgressiveLoader extends FragmentActivity {
+	/**
+	 * Loader whose load <var>n</var> publishes the batches {10n} and
+	 * {10n+1}, waiting for a step permit before the second.
+	 */
+	public static final class SteppedLoader extends ProgressiveLoader<List<Integer>> {
+		private final AtomicInteger loads = new AtomicInteger();
+		private final Semaphore steps;
+
+		public SteppedLoader(Context context, Semaphore steps) {
+			super(context);
+			this.steps = steps;
+		}
+
+		@Override
+		public List<Integer> loadInBackground() {
+			final int first = 10 * loads.incrementAndGet();
+			List<Integer> result = new ArrayList<Integer>();
+			result.add(first);
+			publishPartialResult(Arrays.asList(first));
+			try {
+				if (!steps.tryAcquire(10, TimeUnit.SECONDS)) {
+					return null;
+				}
+			} catch (InterruptedException e) {
+				return null;
+			}
+			result.add(first + 1);
+			publishPartialResult(Arrays.asList(first + 1));
+			return result;
+		}
+
+		@Override
+		protected List<Integer> mergePartialResult(List<Integer> current, List<Integer> batch) {
+			List<Integer> merged = new ArrayList<Integer>();
+			if (current != null) {
+				merged.addAll(current);
+			}
+			merged.addAll(batch);
+			return merged;
+		}
+
+		@Override
+		protected void onStartLoading() {
+			forceLoad();
+		}
+	}
+
+	/** A result as delivered to the callbacks. */
+	public static final class Delivery {
+		public final List<Integer> data;
+		public final boolean partial;
+
+		Delivery(List<Integer> data, boolean partial) {
+			this.data = new ArrayList<Integer>(data);
+			this.partial = partial;
+		}
+
+		@Override
+		public String toString() {
+			return data + (partial ? " (partial)" : "");
+		}
+	}
+
+	private final Semaphore steps = new Semaphore(0);
+	private SteppedLoader loader;
+	private final BlockingQueue<Delivery> deliveries = new LinkedBlockingQueue<Delivery>();
+
+	private final LoaderManager.LoaderCallbacks<List<Integer>> callbacks = new LoaderManager.LoaderCallbacks<List<Integer>>() {
+		@Override
+		public Loader<List<Integer>> onCreateLoader(int id, Bundle args) {
+			loader = new SteppedLoader(FeatureProgressiveLoader.this, steps);
+			return loader;
+		}
+
+		@Override
+		public void onLoadFinished(Loader<List<Integer>> l, List<Integer> data) {
+			deliveries.add(new Delivery(data, loader.isPartialResult()));
+		}
+
+		@Override
+		public void onLoaderReset(Loader<List<Integer>> l) {
+		}
+	};
+
+	@Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.blank);
+
+        getSupportLoaderManager().initLoader(0, null, callbacks);
+    }
+
+	/**
+	 * Wait for the next result delivered to the callbacks.
+	 *
+	 * @return The result, or null on timeout.
+	 */
+	public Delivery awaitDelivery(long timeoutMillis) throws InterruptedException {
+		return deliveries.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Let the running load publish its second batch and finish.
+	 */
+	public void step() {
+		steps.release();
+	}
+
+	/**
+	 * Start a new load, cancelling the running one.
+	 */
+	public void reload() throws InterruptedException {
+		final CountDownLatch done = new CountDownLatch(1);
+		runOnUiThread(new Runnable() {
+			@Override
+			public void run() {
+				loader.forceLoad();
+				done.countDown();
+			}
+		});
+		done.await();
+	}
+}
@@ -0,0 +1,94 @@
+package com.actionbarsherlock.tests.app;
+
+import java.util.concurrent.CountDownLatch;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Bundle;
+import android.support.v4.app.FragmentActivity;
+import android.support.v4.content.LocalBroadcastManager;
+
+public final class FeatureStickyBroadcast extends FragmentActivity {
+	public static final String ACTION_STICKY = "com.actionbarsherlock.tests.app.STICKY";
+	public static final String ACTION_FLUSH = "com.actionbarsherlock.tests.app.FLUSH";
+	public static final String EXTRA_VALUE = "value";
+	public static final int VALUE = 42;
+
+	/** Counts its broadcasts and keeps the value of the last one. */
+	public static final class CountingReceiver extends BroadcastReceiver {
+		public int count;
+		public int value;
+
+		@Override
+		public void onReceive(Context context, Intent intent) {
+			count++;
+			value = intent.getIntExtra(EXTRA_VALUE, 0);
+		}
+	}
+
+	public final CountingReceiver matching = new CountingReceiver();
+	public final CountingReceiver notMatching = new CountingReceiver();
+	public final CountingReceiver afterRemoval = new CountingReceiver();
+	public int matchingOnRegister = -1;
+
+	private final BroadcastReceiver flush = new BroadcastReceiver() {
+		@Override
+		public void onReceive(Context context, Intent intent) {
+		}
+	};
+
+	@Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.blank);
+    }
+
+	@Override
+	protected void onDestroy() {
+		super.onDestroy();
+		LocalBroadcastManager manager = LocalBroadcastManager.getInstance(this);
+		manager.removeStickyBroadcast(new Intent(ACTION_STICKY));
+		manager.unregisterReceiver(flush);
+		manager.unregisterReceiver(matching);
+		manager.unregisterReceiver(notMatching);
+		manager.unregisterReceiver(afterRemoval);
+	}
+
+	/**
+	 * Send a sticky broadcast, register a matching and a non-matching
+	 * receiver after it, then remove it and register another receiver.
+	 */
+	public void registerAfterSticky() throws InterruptedException {
+		final CountDownLatch latch = new CountDownLatch(1);
+		runOnUiThread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					LocalBroadcastManager manager = LocalBroadcastManager.getInstance(FeatureStickyBroadcast.this);
+					manager.registerReceiver(flush, new IntentFilter(ACTION_FLUSH));
+					manager.sendStickyBroadcast(new Intent(ACTION_STICKY).putExtra(EXTRA_VALUE, VALUE));
+
+					manager.registerReceiver(matching, new IntentFilter(ACTION_STICKY));
+					matchingOnRegister = matching.count;
+					IntentFilter withData = new IntentFilter(ACTION_STICKY);
+					withData.addDataScheme("http");
+					manager.registerReceiver(notMatching, withData);
+					flush(manager);
+
+					manager.removeStickyBroadcast(new Intent(ACTION_STICKY));
+					manager.registerReceiver(afterRemoval, new IntentFilter(ACTION_STICKY));
+					flush(manager);
+				} finally {
+					latch.countDown();
+				}
+			}
+		});
+		latch.await();
+	}
+
+	/** Run everything queued so far. */
+	private static void flush(LocalBroadcastManager manager) {
+		manager.sendBroadcastSync(new Intent(ACTION_FLUSH));
+	}
+}
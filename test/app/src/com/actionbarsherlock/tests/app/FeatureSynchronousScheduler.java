@@ -0,0 +1,58 @@
+package com.actionbarsherlock.tests.app;
+
+import android.os.Bundle;
+import android.support.v4.app.FragmentActivity;
+import android.support.v4.content.Loader;
+import android.support.v4.content.SynchronousLoaderScheduler;
+
+public final class FeatureSynchronousScheduler extends FragmentActivity {
+	public int deliveredLoads;
+
+	@Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.blank);
+    }
+
+	/**
+	 * Run two loads back to back on a {@link SynchronousLoaderScheduler}
+	 * with an update throttle of <var>throttle</var>, moving the
+	 * scheduler's clock up to the end of the throttle and then past it.
+	 *
+	 * @return The number of loads delivered after the first load, after the
+	 * second load was started, after moving the clock to just before the
+	 * throttle ends, and after moving it to the end.
+	 */
+	public int[] runThrottledLoads(long throttle) {
+		SynchronousLoaderScheduler scheduler = new SynchronousLoaderScheduler();
+		BenchmarkLoaderThroughput.EmptyLoader loader = new BenchmarkLoaderThroughput.EmptyLoader(this);
+		loader.setScheduler(scheduler);
+		loader.setUpdateThrottle(throttle);
+		deliveredLoads = 0;
+		loader.registerListener(0, new Loader.OnLoadCompleteListener<Integer>() {
+			@Override
+			public void onLoadComplete(Loader<Integer> l, Integer data) {
+				deliveredLoads++;
+			}
+		});
+		loader.startLoading();
+
+		int[] delivered = new int[4];
+		loader.forceLoad();
+		scheduler.runPending();
+		delivered[0] = deliveredLoads;
+
+		loader.forceLoad();
+		scheduler.runPending();
+		delivered[1] = deliveredLoads;
+
+		scheduler.advanceBy(throttle - 1);
+		delivered[2] = deliveredLoads;
+
+		scheduler.advanceBy(1);
+		delivered[3] = deliveredLoads;
+
+		loader.reset();
+		return delivered;
+	}
+}
@@ -0,0 +1,23 @@
+package com.actionbarsherlock.tests.runner;
+
+import android.util.Log;
+import com.actionbarsherlock.tests.app.BenchmarkBroadcastDispatch;
+
+public class TestBenchmarkBroadcastDispatch extends BaseTestCase<BenchmarkBroadcastDispatch> {
+	private static final String TAG = "TestBenchmarkBroadcastDispatch";
+	private static final int BROADCASTS = 1000;
+
+	public TestBenchmarkBroadcastDispatch() {
+		super(BenchmarkBroadcastDispatch.class);
+	}
+
+	public void testDispatchWithManyRegistrations() throws InterruptedException {
+		getInstrumentation().waitForIdleSync();
+
+		long perBroadcast = getActivity().measureBroadcasts(BROADCASTS);
+
+		Log.i(TAG, BenchmarkBroadcastDispatch.REGISTRATIONS + " registrations: "
+				+ perBroadcast + " ns per broadcast");
+		assertEquals(BROADCASTS * BenchmarkBroadcastDispatch.MATCHING, getActivity().received);
+	}
+}
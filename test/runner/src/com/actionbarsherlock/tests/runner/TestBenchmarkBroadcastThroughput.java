@@ -0,0 +1,24 @@
+package com.actionbarsherlock.tests.runner;
+
+import android.util.Log;
+import com.actionbarsherlock.tests.app.BenchmarkBroadcastThroughput;
+
+public class TestBenchmarkBroadcastThroughput extends BaseTestCase<BenchmarkBroadcastThroughput> {
+	private static final String TAG = "TestBenchmarkBroadcastThroughput";
+	private static final int THREADS = 4;
+	private static final int BROADCASTS = 2000;
+
+	public TestBenchmarkBroadcastThroughput() {
+		super(BenchmarkBroadcastThroughput.class);
+	}
+
+	public void testConcurrentSends() throws InterruptedException {
+		getInstrumentation().waitForIdleSync();
+
+		long perSecond = getActivity().measureThroughput(THREADS, BROADCASTS);
+		getInstrumentation().waitForIdleSync();
+
+		Log.i(TAG, THREADS + " sender threads: " + perSecond + " broadcasts per second");
+		assertEquals(THREADS * BROADCASTS, getActivity().received);
+	}
+}
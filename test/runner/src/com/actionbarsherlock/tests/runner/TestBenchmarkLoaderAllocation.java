@@ -0,0 +1,23 @@
+package com.actionbarsherlock.tests.runner;
+
+import android.util.Log;
+import com.actionbarsherlock.tests.app.BenchmarkLoaderAllocation;
+
+public class TestBenchmarkLoaderAllocation extends BaseTestCase<BenchmarkLoaderAllocation> {
+	private static final String TAG = "TestBenchmarkLoaderAllocation";
+	private static final int LOADS = 500;
+
+	public TestBenchmarkLoaderAllocation() {
+		super(BenchmarkLoaderAllocation.class);
+	}
+
+	public void testAllocationPerLoad() throws InterruptedException {
+		getInstrumentation().waitForIdleSync();
+
+		long[] allocated = getActivity().measureAllocations(LOADS);
+
+		Log.i(TAG, LOADS + " loads: " + allocated[0] + " objects, "
+				+ allocated[1] + " bytes per load");
+		assertEquals(LOADS, getActivity().completedLoads);
+	}
+}
@@ -0,0 +1,20 @@
+package com.actionbarsherlock.tests.runner;
+
+import android.util.Log;
+import com.actionbarsherlock.tests.app.BenchmarkLoaderThroughput;
+
+public class TestBenchmarkLoaderThroughput extends BaseTestCase<BenchmarkLoaderThroughput> {
+	private static final String TAG = "TestBenchmarkLoaderThroughput";
+	private static final int LOADS = 10000;
+
+	public TestBenchmarkLoaderThroughput() {
+		super(BenchmarkLoaderThroughput.class);
+	}
+
+	public void testSynchronousLoads() {
+		long perLoad = getActivity().measureSynchronousLoads(LOADS);
+
+		Log.i(TAG, LOADS + " synchronous loads: " + perLoad + " ns per load");
+		assertEquals(LOADS, getActivity().deliveredLoads);
+	}
+}
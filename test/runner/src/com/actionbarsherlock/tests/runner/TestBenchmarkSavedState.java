@@ -0,0 +1,41 @@
+package com.actionbarsherlock.tests.runner;
+
+import android.os.Bundle;
+import android.util.Log;
+import com.actionbarsherlock.tests.app.BenchmarkSavedState;
+
+public class TestBenchmarkSavedState extends BaseTestCase<BenchmarkSavedState> {
+	private static final String TAG = "TestBenchmarkSavedState";
+	private static final int ITERATIONS = 20;
+
+	public TestBenchmarkSavedState() {
+		super(BenchmarkSavedState.class);
+	}
+
+	public void testCompactSavedStateIsSmaller() throws InterruptedException {
+		long[] standard = getActivity().measureSavedState(false, ITERATIONS);
+		long[] compact = getActivity().measureSavedState(true, ITERATIONS);
+
+		Log.i(TAG, "Depth " + BenchmarkSavedState.BACK_STACK_DEPTH
+				+ ": standard=" + standard[0] + " bytes/" + standard[1] + " ns"
+				+ ", compact=" + compact[0] + " bytes/" + compact[1] + " ns");
+		assertTrue(compact[0] < standard[0]);
+	}
+
+	public void testCompactSavedStateRestores() throws InterruptedException {
+		String original = getActivity().describeState();
+		Bundle standard = getActivity().saveAndParcel(false);
+		Bundle compact = getActivity().saveAndParcel(true);
+
+		BenchmarkSavedState fromStandard = BenchmarkSavedState.restore(getInstrumentation(), standard);
+		String restoredStandard = fromStandard.describeState();
+		fromStandard.finish();
+
+		BenchmarkSavedState fromCompact = BenchmarkSavedState.restore(getInstrumentation(), compact);
+		String restoredCompact = fromCompact.describeState();
+		fromCompact.finish();
+
+		assertEquals(original, restoredStandard);
+		assertEquals(restoredStandard, restoredCompact);
+	}
+}
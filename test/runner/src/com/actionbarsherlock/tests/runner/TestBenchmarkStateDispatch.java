@@ -0,0 +1,25 @@
+package com.actionbarsherlock.tests.runner;
+
+import android.util.Log;
+import com.actionbarsherlock.tests.app.BenchmarkStateDispatch;
+
+public class TestBenchmarkStateDispatch extends BaseTestCase<BenchmarkStateDispatch> {
+	private static final String TAG = "TestBenchmarkStateDispatch";
+	private static final int ITERATIONS = 100;
+
+	public TestBenchmarkStateDispatch() {
+		super(BenchmarkStateDispatch.class);
+	}
+
+	public void testDispatchWithInactiveFragments() throws InterruptedException {
+		getInstrumentation().waitForIdleSync();
+		BenchmarkStateDispatch.VisibleFragment visible = getActivity().getVisibleFragment();
+		int resumed = visible.resumeCount;
+
+		long dispatch = getActivity().measureDispatch(getInstrumentation(), ITERATIONS);
+
+		Log.i(TAG, BenchmarkStateDispatch.INACTIVE_FRAGMENTS + " inactive fragments: "
+				+ dispatch + " ns per pause/resume");
+		assertEquals(resumed + ITERATIONS, visible.resumeCount);
+	}
+}
@@ -0,0 +1,24 @@
+package com.actionbarsherlock.tests.runner;
+
+import java.util.Arrays;
+import com.actionbarsherlock.tests.app.FeatureBackStackCompaction;
+
+public class TestFeatureBackStackCompaction extends BaseTestCase<FeatureBackStackCompaction> {
+	public TestFeatureBackStackCompaction() {
+		super(FeatureBackStackCompaction.class);
+	}
+
+	public void testPopAfterCompaction() throws InterruptedException {
+		getActivity().pushAndPopAll();
+
+		// Of the five fragments only "2" is referenced by nothing but deep
+		// entries that allow compaction, so it is the only one released.
+		assertEquals(4, getActivity().getAliveAfterPush());
+
+		// Each pop shows the fragment it replaced, rebuilt if compacted,
+		// and leaves no stray instance behind.
+		assertEquals(Arrays.asList("3", "2", "1", "0"), getActivity().getPoppedLabels());
+		assertTrue(getActivity().isFirstKept());
+		assertEquals(1, getActivity().getAliveAfterPop());
+	}
+}
@@ -0,0 +1,24 @@
+package com.actionbarsherlock.tests.runner;
+
+import java.util.List;
+import com.actionbarsherlock.tests.app.FeatureBroadcastHandler;
+
+public class TestFeatureBroadcastHandler extends BaseTestCase<FeatureBroadcastHandler> {
+	public TestFeatureBroadcastHandler() {
+		super(FeatureBroadcastHandler.class);
+	}
+
+	public void testReceiversRunOnHandler() throws InterruptedException {
+		FeatureBroadcastHandler activity = getActivity();
+		assertTrue(activity.sendToHandler());
+
+		assertFalse(activity.wasOrderedOffThread());
+		assertSame(activity.getHandlerThread(), activity.getStickyThread());
+
+		List<Integer> sequences = activity.getSequences();
+		assertEquals(FeatureBroadcastHandler.BROADCASTS, sequences.size());
+		for (int i = 0; i < sequences.size(); i++) {
+			assertEquals(i, sequences.get(i).intValue());
+		}
+	}
+}
@@ -0,0 +1,14 @@
+package com.actionbarsherlock.tests.runner;
+
+import java.util.Collections;
+import com.actionbarsherlock.tests.app.FeatureBroadcastMatching;
+
+public class TestFeatureBroadcastMatching extends BaseTestCase<FeatureBroadcastMatching> {
+	public TestFeatureBroadcastMatching() {
+		super(FeatureBroadcastMatching.class);
+	}
+
+	public void testDeliveryMatchesIntentFilter() throws InterruptedException {
+		assertEquals(Collections.emptyList(), getActivity().findMismatches());
+	}
+}
@@ -0,0 +1,23 @@
+package com.actionbarsherlock.tests.runner;
+
+import android.support.v4.content.LoaderStats;
+import com.actionbarsherlock.tests.app.FeatureContentChangeWindow;
+
+public class TestFeatureContentChangeWindow extends BaseTestCase<FeatureContentChangeWindow> {
+	public TestFeatureContentChangeWindow() {
+		super(FeatureContentChangeWindow.class);
+	}
+
+	public void testChangesBeforeRunningLoadAreDropped() throws InterruptedException {
+		assertEquals(0, getActivity().changeAroundLoadStart(0));
+		LoaderStats stats = getActivity().getStats();
+		assertEquals(0, stats.notificationCount);
+	}
+
+	public void testChangesStraddlingLoadStartReload() throws InterruptedException {
+		assertEquals(1, getActivity().changeAroundLoadStart(1));
+		LoaderStats stats = getActivity().getStats();
+		assertEquals(2, stats.notificationCount);
+		assertEquals(2, stats.lastReloadNotifications);
+	}
+}
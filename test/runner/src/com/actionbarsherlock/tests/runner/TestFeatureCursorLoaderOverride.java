@@ -0,0 +1,20 @@
+package com.actionbarsherlock.tests.runner;
+
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import com.actionbarsherlock.tests.app.FeatureCursorLoaderOverride;
+import com.actionbarsherlock.tests.app.FeatureLoaderCoalescing;
+
+public class TestFeatureCursorLoaderOverride extends BaseTestCase<FeatureCursorLoaderOverride> {
+	public TestFeatureCursorLoaderOverride() {
+		super(FeatureCursorLoaderOverride.class);
+	}
+
+	public void testOverriddenLoadInBackgroundIsUsed() throws InterruptedException {
+		Cursor cursor = getActivity().awaitLoad();
+		assertNotNull(cursor);
+		assertTrue(cursor instanceof CursorWrapper);
+		assertEquals(FeatureLoaderCoalescing.ROWS, cursor.getCount());
+		assertEquals(1, getActivity().getLoadCalls());
+	}
+}
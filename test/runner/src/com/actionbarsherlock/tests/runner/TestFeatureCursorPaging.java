@@ -0,0 +1,72 @@
+package com.actionbarsherlock.tests.runner;
+
+import java.util.List;
+import android.os.SystemClock;
+import com.actionbarsherlock.tests.app.FeatureCursorPaging;
+
+public class TestFeatureCursorPaging extends BaseTestCase<FeatureCursorPaging> {
+	public TestFeatureCursorPaging() {
+		super(FeatureCursorPaging.class);
+	}
+
+	private static void assertIds(long first, int count, List<Long> ids) {
+		assertNotNull(ids);
+		assertEquals(count, ids.size());
+		for (int i = 0; i < count; i++) {
+			assertEquals(first + i, ids.get(i).longValue());
+		}
+	}
+
+	public void testPagesAreMergedInOrder() throws InterruptedException {
+		assertIds(0, FeatureCursorPaging.PAGE_SIZE, getActivity().awaitResult());
+		assertTrue(getActivity().hasMoreRows());
+
+		assertTrue(getActivity().loadMoreRows());
+		assertFalse(getActivity().loadMoreRows());
+		assertIds(0, 2 * FeatureCursorPaging.PAGE_SIZE, getActivity().awaitResult());
+		assertTrue(getActivity().hasMoreRows());
+
+		// The last page is short, so it ends the rows.
+		assertTrue(getActivity().loadMoreRows());
+		assertIds(0, FeatureCursorPaging.ROWS, getActivity().awaitResult());
+		assertFalse(getActivity().hasMoreRows());
+		assertFalse(getActivity().loadMoreRows());
+
+		// Each page after the first only queries its own rows.
+		assertEquals(3, FeatureCursorPaging.PagingProvider.QUERIES.get());
+	}
+
+	public void testPagingRequiresSortOrder() {
+		assertTrue(getActivity().pagingWithoutSortOrderThrows());
+	}
+
+	public void testShownRowLoadsNextPage() throws InterruptedException {
+		assertIds(0, FeatureCursorPaging.PAGE_SIZE, getActivity().awaitResult());
+
+		// Short of the last half page of the loaded rows.
+		getActivity().showRow(FeatureCursorPaging.PAGE_SIZE / 2 - 1);
+		SystemClock.sleep(500);
+		assertEquals(1, FeatureCursorPaging.PagingProvider.QUERIES.get());
+
+		getActivity().showRow(FeatureCursorPaging.PAGE_SIZE / 2);
+		assertFalse(getActivity().loadMoreRows());
+		assertIds(0, 2 * FeatureCursorPaging.PAGE_SIZE, getActivity().awaitResult());
+	}
+
+	public void testChangeReloadsLoadedRows() throws InterruptedException {
+		assertIds(0, FeatureCursorPaging.PAGE_SIZE, getActivity().awaitResult());
+		assertTrue(getActivity().loadMoreRows());
+		assertIds(0, 2 * FeatureCursorPaging.PAGE_SIZE, getActivity().awaitResult());
+
+		// Every row loaded so far is queried again, in one query.
+		getActivity().insertFirstRow();
+		assertIds(-1, 2 * FeatureCursorPaging.PAGE_SIZE, getActivity().awaitResult());
+		assertEquals(3, FeatureCursorPaging.PagingProvider.QUERIES.get());
+		assertTrue(getActivity().hasMoreRows());
+
+		getActivity().resetPaging();
+		assertIds(-1, FeatureCursorPaging.PAGE_SIZE, getActivity().awaitResult());
+		assertTrue(getActivity().loadMoreRows());
+		assertIds(-1, 2 * FeatureCursorPaging.PAGE_SIZE, getActivity().awaitResult());
+	}
+}
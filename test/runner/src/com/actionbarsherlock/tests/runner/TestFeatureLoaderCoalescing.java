@@ -0,0 +1,27 @@
+package com.actionbarsherlock.tests.runner;
+
+import com.actionbarsherlock.tests.app.FeatureLoaderCoalescing;
+
+public class TestFeatureLoaderCoalescing extends BaseTestCase<FeatureLoaderCoalescing> {
+	public TestFeatureLoaderCoalescing() {
+		super(FeatureLoaderCoalescing.class);
+	}
+
+	public void testIdenticalLoadsQueryOnce() throws InterruptedException {
+		int[] counts = getActivity().awaitLoads();
+		assertNotNull(counts);
+		assertEquals(1, FeatureLoaderCoalescing.CountingProvider.QUERIES.get());
+		for (int count : counts) {
+			assertEquals(FeatureLoaderCoalescing.ROWS, count);
+		}
+		assertTrue(getActivity().resultsAreDistinct());
+	}
+
+	public void testChangeDuringLoadIsNotShared() throws InterruptedException {
+		assertNotNull(getActivity().awaitLoads());
+		int[] counts = getActivity().changeWhileLoading();
+		for (int count : counts) {
+			assertEquals(FeatureLoaderCoalescing.ROWS + 1, count);
+		}
+	}
+}
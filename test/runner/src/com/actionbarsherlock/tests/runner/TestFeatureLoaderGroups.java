@@ -0,0 +1,30 @@
+package com.actionbarsherlock.tests.runner;
+
+import com.actionbarsherlock.tests.app.FeatureLoaderGroups;
+
+public class TestFeatureLoaderGroups extends BaseTestCase<FeatureLoaderGroups> {
+	public TestFeatureLoaderGroups() {
+		super(FeatureLoaderGroups.class);
+	}
+
+	public void testFirstResultIsHeldForSibling() throws InterruptedException {
+		getActivity().startGroup(10000);
+		assertFalse(getActivity().awaitDelivery(FeatureLoaderGroups.FAST, 500));
+
+		getActivity().openGate();
+		assertTrue(getActivity().awaitDelivery(FeatureLoaderGroups.SLOW, 5000));
+		assertTrue(getActivity().awaitDelivery(FeatureLoaderGroups.FAST, 0));
+		assertTrue(getActivity().getDeliveryTime(FeatureLoaderGroups.FAST) >= getActivity().getGateTime());
+	}
+
+	public void testTimeoutReleasesLoneResult() throws InterruptedException {
+		getActivity().startGroup(500);
+		assertTrue(getActivity().awaitDelivery(FeatureLoaderGroups.FAST, 5000));
+		assertTrue(getActivity().getDeliveryTime(FeatureLoaderGroups.FAST) >= 500);
+		assertFalse(getActivity().awaitDelivery(FeatureLoaderGroups.SLOW, 0));
+
+		// The group is over, so the late result is not held.
+		getActivity().openGate();
+		assertTrue(getActivity().awaitDelivery(FeatureLoaderGroups.SLOW, 5000));
+	}
+}
@@ -0,0 +1,46 @@
+package com.actionbarsherlock.tests.runner;
+
+import android.os.SystemClock;
+import android.support.v4.content.ModernAsyncTask;
+import com.actionbarsherlock.tests.app.FeatureLoaderPriority;
+
+public class TestFeatureLoaderPriority extends BaseTestCase<FeatureLoaderPriority> {
+	public TestFeatureLoaderPriority() {
+		super(FeatureLoaderPriority.class);
+	}
+
+	private static void awaitLoads(int count) {
+		long end = SystemClock.uptimeMillis() + 5000;
+		while (FeatureLoaderPriority.LOAD_ORDER.size() < count && SystemClock.uptimeMillis() < end) {
+			SystemClock.sleep(10);
+		}
+		assertTrue(FeatureLoaderPriority.LOAD_ORDER.size() >= count);
+	}
+
+	public void testLoadersStartAtStartedPriority() {
+		getActivity();
+		for (String name : new String[] { FeatureLoaderPriority.ACTIVITY, FeatureLoaderPriority.VISIBLE,
+				FeatureLoaderPriority.HIDDEN, FeatureLoaderPriority.OFF_PAGE }) {
+			assertEquals(name, Integer.valueOf(ModernAsyncTask.PRIORITY_DEFAULT),
+					FeatureLoaderPriority.START_PRIORITIES.get(name));
+		}
+	}
+
+	public void testResumedFragmentLoadsFirst() throws InterruptedException {
+		FeatureLoaderPriority.blockThreads();
+		assertEquals(ModernAsyncTask.PRIORITY_HIGH, getActivity().getPriority(FeatureLoaderPriority.ACTIVITY));
+		assertEquals(ModernAsyncTask.PRIORITY_HIGH, getActivity().getPriority(FeatureLoaderPriority.VISIBLE));
+		assertEquals(ModernAsyncTask.PRIORITY_DEFAULT, getActivity().getPriority(FeatureLoaderPriority.HIDDEN));
+		assertEquals(ModernAsyncTask.PRIORITY_DEFAULT, getActivity().getPriority(FeatureLoaderPriority.OFF_PAGE));
+
+		// With one thread free, the queued loads run one at a time.
+		FeatureLoaderPriority.releaseThreads(1);
+		awaitLoads(1);
+		assertEquals(FeatureLoaderPriority.VISIBLE, FeatureLoaderPriority.LOAD_ORDER.get(0));
+
+		FeatureLoaderPriority.releaseThreads();
+		awaitLoads(3);
+		assertTrue(FeatureLoaderPriority.LOAD_ORDER.contains(FeatureLoaderPriority.HIDDEN));
+		assertTrue(FeatureLoaderPriority.LOAD_ORDER.contains(FeatureLoaderPriority.OFF_PAGE));
+	}
+}
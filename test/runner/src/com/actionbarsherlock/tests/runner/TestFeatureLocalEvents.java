@@ -0,0 +1,18 @@
+package com.actionbarsherlock.tests.runner;
+
+import java.util.Arrays;
+import com.actionbarsherlock.tests.app.FeatureLocalEvents;
+
+public class TestFeatureLocalEvents extends BaseTestCase<FeatureLocalEvents> {
+	public TestFeatureLocalEvents() {
+		super(FeatureLocalEvents.class);
+	}
+
+	public void testEventDelivery() throws InterruptedException {
+		// Only exact classes are delivered, in order with the broadcast,
+		// and nothing reaches the receiver once it is unregistered.
+		assertEquals(Arrays.asList("event 1", "intent 2", "event 4", "event 5", "intent 8"),
+				getActivity().sendEvents());
+		assertFalse(getActivity().wasSentAfterUnregister());
+	}
+}
@@ -0,0 +1,40 @@
+package com.actionbarsherlock.tests.runner;
+
+import java.util.Arrays;
+import com.actionbarsherlock.tests.app.FeatureProgressiveLoader;
+import com.actionbarsherlock.tests.app.FeatureProgressiveLoader.Delivery;
+
+public class TestFeatureProgressiveLoader extends BaseTestCase<FeatureProgressiveLoader> {
+	public TestFeatureProgressiveLoader() {
+		super(FeatureProgressiveLoader.class);
+	}
+
+	private void assertDelivery(boolean partial, Integer[] data) throws InterruptedException {
+		Delivery delivery = getActivity().awaitDelivery(5000);
+		assertNotNull(delivery);
+		assertEquals(Arrays.asList(data), delivery.data);
+		assertEquals(partial, delivery.partial);
+	}
+
+	public void testBatchesThenCompleteResult() throws InterruptedException {
+		assertDelivery(true, new Integer[] { 10 });
+		getActivity().step();
+		assertDelivery(true, new Integer[] { 10, 11 });
+		assertDelivery(false, new Integer[] { 10, 11 });
+		assertNull(getActivity().awaitDelivery(500));
+	}
+
+	public void testCancelledLoadBatchesAreDropped() throws InterruptedException {
+		assertDelivery(true, new Integer[] { 10 });
+		getActivity().reload();
+
+		// The cancelled load publishes its second batch and finishes; none
+		// of it is delivered, and the new load starts from scratch.
+		getActivity().step();
+		assertDelivery(true, new Integer[] { 20 });
+		getActivity().step();
+		assertDelivery(true, new Integer[] { 20, 21 });
+		assertDelivery(false, new Integer[] { 20, 21 });
+		assertNull(getActivity().awaitDelivery(500));
+	}
+}
@@ -0,0 +1,22 @@
+package com.actionbarsherlock.tests.runner;
+
+import com.actionbarsherlock.tests.app.FeatureStickyBroadcast;
+
+public class TestFeatureStickyBroadcast extends BaseTestCase<FeatureStickyBroadcast> {
+	public TestFeatureStickyBroadcast() {
+		super(FeatureStickyBroadcast.class);
+	}
+
+	public void testStickyDelivery() throws InterruptedException {
+		FeatureStickyBroadcast activity = getActivity();
+		activity.registerAfterSticky();
+
+		// Delivered after registering returns, not from within it.
+		assertEquals(0, activity.matchingOnRegister);
+		assertEquals(1, activity.matching.count);
+		assertEquals(FeatureStickyBroadcast.VALUE, activity.matching.value);
+
+		assertEquals(0, activity.notMatching.count);
+		assertEquals(0, activity.afterRemoval.count);
+	}
+}
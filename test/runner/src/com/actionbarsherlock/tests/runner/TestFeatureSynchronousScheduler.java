@@ -0,0 +1,15 @@
+package com.actionbarsherlock.tests.runner;
+
+import java.util.Arrays;
+import com.actionbarsherlock.tests.app.FeatureSynchronousScheduler;
+
+public class TestFeatureSynchronousScheduler extends BaseTestCase<FeatureSynchronousScheduler> {
+	public TestFeatureSynchronousScheduler() {
+		super(FeatureSynchronousScheduler.class);
+	}
+
+	public void testThrottleFollowsSchedulerClock() {
+		int[] delivered = getActivity().runThrottledLoads(1000);
+		assertEquals("[1, 1, 1, 2]", Arrays.toString(delivered));
+	}
+}